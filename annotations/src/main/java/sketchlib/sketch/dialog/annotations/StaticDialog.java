@@ -0,0 +1,56 @@
+package sketchlib.sketch.dialog.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a fully static dialog. The processor generates a factory class next to the annotated
+ * type with every value inlined as a constant, so nothing is resolved by name or reflection at
+ * runtime.
+ *
+ * <p>Unset values keep the dialog's defaults: empty strings, {@code 0} colors and {@code DEFAULT}
+ * enum values are treated as "not specified".
+ *
+ * <p>With an explicit {@link Theme}, colors are resolved at compile time from this spec and the
+ * library's built-in palette; colors set through {@code setDefaults} do not apply to it.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface StaticDialog {
+
+    enum Kind { MATERIAL, SIMPLE }
+    enum Theme { DEFAULT, LIGHT, DARK, AUTO }
+    enum Animation { DEFAULT, NONE, ZOOM, FADE, SLIDE_BOTTOM }
+    enum Progress { NONE, SPINNER, HORIZONTAL, CIRCULAR }
+    enum Toggle { DEFAULT, ENABLED, DISABLED }
+
+    /** Simple name of the generated factory. Defaults to the annotated type's name + {@code "Factory"}. */
+    String name() default "";
+
+    Kind kind() default Kind.MATERIAL;
+
+    String title() default "";
+    String message() default "";
+    String messageHtml() default "";
+    String messageMarkdown() default "";
+    String positiveText() default "";
+    String negativeText() default "";
+
+    /**
+     * Drawable resource reference emitted as-is into the generated code, e.g.
+     * {@code "R.drawable.ic_update"} or {@code "android.R.drawable.ic_dialog_alert"}. R fields are
+     * not compile-time constants, so the reference is written as source instead of an int value.
+     */
+    String icon() default "";
+    int iconTint() default 0;
+    int primaryColor() default 0;
+    int backgroundColor() default 0;
+
+    Theme theme() default Theme.DEFAULT;
+    Animation animation() default Animation.DEFAULT;
+    Progress progress() default Progress.NONE;
+    Toggle glassy() default Toggle.DEFAULT;
+    Toggle cancelable() default Toggle.DEFAULT;
+}
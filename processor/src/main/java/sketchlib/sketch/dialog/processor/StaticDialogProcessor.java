@@ -0,0 +1,189 @@
+package sketchlib.sketch.dialog.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import sketchlib.sketch.dialog.annotations.StaticDialog;
+
+/**
+ * Generates a straight-line factory for every {@link StaticDialog}-annotated type. When the spec
+ * names a theme, the final colors are computed here and passed to the Builder as a constant
+ * {@code ResolvedStyle}, so build() skips theme, defaults and palette resolution entirely.
+ */
+public class StaticDialogProcessor extends AbstractProcessor {
+
+    private static final String MATERIAL_DIALOG = "sketchlib.sketch.dialog.material.MaterialDialog";
+    private static final String SKETCH_DIALOG = "sketchlib.sketch.dialog.simple.SketchDialog";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(StaticDialog.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Messager messager = processingEnv.getMessager();
+        Elements elements = processingEnv.getElementUtils();
+        for (Element element : roundEnv.getElementsAnnotatedWith(StaticDialog.class)) {
+            if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@StaticDialog can only be applied to classes and interfaces", element);
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            StaticDialog spec = type.getAnnotation(StaticDialog.class);
+            String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+            String factoryName = spec.name().isEmpty() ? type.getSimpleName() + "Factory" : spec.name();
+            String qualifiedName = packageName.isEmpty() ? factoryName : packageName + "." + factoryName;
+            if (!SourceVersion.isIdentifier(factoryName)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Invalid factory name '" + factoryName + "'", type);
+                continue;
+            }
+            if (!generated.add(qualifiedName)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Duplicate dialog factory " + qualifiedName, type);
+                continue;
+            }
+            try {
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+                try (Writer writer = file.openWriter()) {
+                    writer.write(generate(packageName, factoryName, type.getQualifiedName().toString(), spec));
+                }
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e.getMessage(), type);
+            }
+        }
+        return true;
+    }
+
+    private static String generate(String packageName, String factoryName, String source, StaticDialog spec) {
+        String dialog = spec.kind() == StaticDialog.Kind.MATERIAL ? MATERIAL_DIALOG : SKETCH_DIALOG;
+        StringBuilder code = new StringBuilder(1024);
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("/** Generated from {@code ").append(source).append("}. Do not edit. */\n");
+        code.append("public final class ").append(factoryName).append(" {\n\n");
+        boolean resolved = spec.theme() != StaticDialog.Theme.DEFAULT;
+        boolean material = spec.kind() == StaticDialog.Kind.MATERIAL;
+        if (resolved && spec.theme() != StaticDialog.Theme.DARK) appendStyle(code, dialog, "LIGHT_STYLE", material, false, spec);
+        if (resolved && spec.theme() != StaticDialog.Theme.LIGHT) appendStyle(code, dialog, "DARK_STYLE", material, true, spec);
+        if (resolved) code.append('\n');
+        code.append("    private ").append(factoryName).append("() {\n    }\n\n");
+
+        code.append("    public static ").append(dialog).append(".Builder newBuilder(android.content.Context context) {\n");
+        code.append("        return new ").append(dialog).append(".Builder(context)");
+        appendString(code, "setTitle", spec.title());
+        if (!spec.messageHtml().isEmpty()) {
+            appendString(code, "setMessageHtml", spec.messageHtml());
+        } else if (!spec.messageMarkdown().isEmpty()) {
+            appendString(code, "setMessageMarkdown", spec.messageMarkdown());
+        } else {
+            appendString(code, "setMessage", spec.message());
+        }
+        if (!spec.icon().isEmpty()) appendCall(code, "setIcon", spec.icon());
+        if (spec.iconTint() != 0) appendCall(code, "setIconTint", hex(spec.iconTint()));
+        switch (spec.theme()) {
+            case LIGHT: appendCall(code, "setResolvedStyle", "LIGHT_STYLE"); break;
+            case DARK: appendCall(code, "setResolvedStyle", "DARK_STYLE"); break;
+            case AUTO:
+                appendCall(code, "setResolvedStyle", "(context.getResources().getConfiguration().uiMode"
+                        + " & android.content.res.Configuration.UI_MODE_NIGHT_MASK)"
+                        + " == android.content.res.Configuration.UI_MODE_NIGHT_YES ? DARK_STYLE : LIGHT_STYLE");
+                break;
+            default:
+                if (spec.primaryColor() != 0) appendCall(code, "setPrimaryColor", hex(spec.primaryColor()));
+                if (spec.backgroundColor() != 0) appendCall(code, "setBackgroundColor", hex(spec.backgroundColor()));
+                break;
+        }
+        if (spec.animation() != StaticDialog.Animation.DEFAULT) {
+            appendCall(code, "setAnimation", dialog + ".Animation." + spec.animation().name());
+        }
+        switch (spec.progress()) {
+            case SPINNER: appendCall(code, "setLoading", "true"); break;
+            case HORIZONTAL: appendCall(code, "setHorizontalProgress", "true"); break;
+            case CIRCULAR: appendCall(code, "setCircularProgress", "true"); break;
+            default: break;
+        }
+        if (spec.glassy() != StaticDialog.Toggle.DEFAULT) {
+            appendCall(code, "setGlassyMode", String.valueOf(spec.glassy() == StaticDialog.Toggle.ENABLED));
+        }
+        if (spec.cancelable() != StaticDialog.Toggle.DEFAULT) {
+            appendCall(code, "setCancelable", String.valueOf(spec.cancelable() == StaticDialog.Toggle.ENABLED));
+        }
+        if (!spec.positiveText().isEmpty()) appendCall(code, "setPositiveButton", literal(spec.positiveText()) + ", null");
+        if (!spec.negativeText().isEmpty()) appendCall(code, "setNegativeButton", literal(spec.negativeText()) + ", null");
+        code.append(";\n    }\n\n");
+
+        code.append("    public static ").append(dialog).append(" build(android.content.Context context) {\n");
+        code.append("        return newBuilder(context).build();\n    }\n\n");
+        code.append("    public static ").append(dialog).append(" show(android.content.Context context) {\n");
+        code.append("        return newBuilder(context).show();\n    }\n");
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private static void appendStyle(StringBuilder code, String dialog, String field, boolean material, boolean dark, StaticDialog spec) {
+        int[] colors = material
+                ? StyleResolver.material(dark, spec.primaryColor(), spec.backgroundColor())
+                : StyleResolver.simple(dark, spec.primaryColor(), spec.backgroundColor());
+        String[] setters = material ? StyleResolver.MATERIAL_ROLES : StyleResolver.SIMPLE_ROLES;
+        code.append("    private static final ").append(dialog).append(".ResolvedStyle ").append(field)
+                .append(" = new ").append(dialog).append(".ResolvedStyle.Builder(").append(dark).append(')');
+        for (int i = 0; i < colors.length; i++) appendCall(code, setters[i], hex(colors[i]));
+        appendCall(code, "build", "");
+        code.append(";\n");
+    }
+
+    private static void appendString(StringBuilder code, String method, String value) {
+        if (!value.isEmpty()) appendCall(code, method, literal(value));
+    }
+
+    private static void appendCall(StringBuilder code, String method, String arguments) {
+        code.append("\n                .").append(method).append('(').append(arguments).append(')');
+    }
+
+    private static String hex(int color) {
+        return String.format("0x%08X", color);
+    }
+
+    private static String literal(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,175 @@
+package sketchlib.sketch.dialog.processor;
+
+/**
+ * Compile-time copy of the dialogs' color resolution. The results are emitted as calls on a
+ * {@code ResolvedStyle.Builder}, so it must stay in sync with {@code Builder.resolveStyle()}
+ * and {@code MaterialDialog.TonalPalette}.
+ */
+final class StyleResolver {
+
+    /** {@code MaterialDialog.ResolvedStyle.Builder} setters, in the order {@link #material} returns. */
+    static final String[] MATERIAL_ROLES = {
+        "setPrimaryColor", "setBackgroundColor", "setOnPrimaryColor", "setTitleColor", "setMessageColor",
+        "setTrackColor", "setOutlineColor", "setNegativePressedColor", "setPositivePressedColor"
+    };
+
+    /** {@code SketchDialog.ResolvedStyle.Builder} setters, in the order {@link #simple} returns. */
+    static final String[] SIMPLE_ROLES = {
+        "setPrimaryColor", "setBackgroundColor", "setTitleColor", "setMessageColor",
+        "setNegativeButtonColor", "setNegativeTextColor"
+    };
+
+    private static final int MATERIAL_BASELINE_SEED = 0xFF6750A4;
+    private static final int[] MATERIAL_BASELINE_PALETTE = {
+        0xFFFFFFFF,
+        0xFFF3EDF7, 0xFF1D1B20, 0xFF49454F, 0xFFEADDFF,
+        0xFF2B2930, 0xFFE6E0E9, 0xFFCAC4D0, 0xFF4F378B,
+        0xFF79747E, 0xFF938F99
+    };
+
+    private static final int SIMPLE_PRIMARY = 0xFF582C8E;
+
+    private StyleResolver() {
+    }
+
+    /** Colors for {@code MaterialDialog.ResolvedStyle}, in {@link #MATERIAL_ROLES} order. */
+    static int[] material(boolean dark, int primaryColor, int backgroundColor) {
+        int primary = primaryColor != 0 ? primaryColor : MATERIAL_BASELINE_SEED;
+        int[] palette = palette(primary);
+        int onPrimary = palette[0];
+        int background = backgroundColor != 0 ? backgroundColor : dark ? palette[5] : palette[1];
+        return new int[] {
+            primary,
+            background,
+            onPrimary,
+            dark ? palette[6] : palette[2],
+            dark ? palette[7] : palette[3],
+            dark ? palette[8] : palette[4],
+            dark ? palette[10] : palette[9],
+            (31 << 24) | (primary & 0x00FFFFFF),
+            blend(primary, onPrimary, 0.12f)
+        };
+    }
+
+    /** Colors for {@code SketchDialog.ResolvedStyle}, in {@link #SIMPLE_ROLES} order. */
+    static int[] simple(boolean dark, int primaryColor, int backgroundColor) {
+        return new int[] {
+            primaryColor != 0 ? primaryColor : SIMPLE_PRIMARY,
+            backgroundColor != 0 ? backgroundColor : dark ? 0xFF1C1C22 : 0xFFFFFFFF,
+            dark ? 0xFFFFFFFF : 0xFF1A1A1A,
+            dark ? 0xFFA0A0A5 : 0xFF666666,
+            dark ? 0xFF2C2C35 : 0xFFF0F0F0,
+            dark ? 0xFFFFFFFF : 0xFF333333
+        };
+    }
+
+    private static int[] palette(int seed) {
+        seed |= 0xFF000000;
+        if (seed == MATERIAL_BASELINE_SEED) return MATERIAL_BASELINE_PALETTE;
+        double[] lch = toLch(seed);
+        double hue = lch[2];
+        double primaryChroma = Math.max(48, lch[1]);
+        double neutralChroma = 4;
+        double neutralVariantChroma = 8;
+        int onPrimary = lch[0] > 60 ? tone(hue, primaryChroma, 10) : 0xFFFFFFFF;
+        return new int[] {
+            onPrimary,
+            tone(hue, neutralChroma, 94), tone(hue, neutralChroma, 10),
+            tone(hue, neutralVariantChroma, 30), tone(hue, primaryChroma, 90),
+            tone(hue, neutralChroma, 17), tone(hue, neutralChroma, 90),
+            tone(hue, neutralVariantChroma, 80), tone(hue, primaryChroma, 30),
+            tone(hue, neutralVariantChroma, 50), tone(hue, neutralVariantChroma, 60)
+        };
+    }
+
+    private static int blend(int base, int overlay, float ratio) {
+        float inverse = 1f - ratio;
+        int r = Math.round(red(base) * inverse + red(overlay) * ratio);
+        int g = Math.round(green(base) * inverse + green(overlay) * ratio);
+        int b = Math.round(blue(base) * inverse + blue(overlay) * ratio);
+        return (base & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int tone(double hue, double chroma, double tone) {
+        int color = fromLch(tone, chroma, hue);
+        if (color != 0) return color;
+        double low = 0, high = chroma;
+        int best = fromLch(tone, 0, hue);
+        for (int i = 0; i < 12; i++) {
+            double mid = (low + high) / 2;
+            int candidate = fromLch(tone, mid, hue);
+            if (candidate != 0) {
+                best = candidate;
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return best;
+    }
+
+    private static double[] toLch(int color) {
+        double r = linearize(red(color));
+        double g = linearize(green(color));
+        double b = linearize(blue(color));
+        double x = (0.41233895 * r + 0.35762064 * g + 0.18051042 * b) / 0.95047;
+        double y = 0.2126 * r + 0.7152 * g + 0.0722 * b;
+        double z = (0.01932141 * r + 0.11916382 * g + 0.95034478 * b) / 1.08883;
+        double fx = labF(x), fy = labF(y), fz = labF(z);
+        double l = 116 * fy - 16;
+        double a = 500 * (fx - fy);
+        double bb = 200 * (fy - fz);
+        double hue = Math.toDegrees(Math.atan2(bb, a));
+        return new double[] { l, Math.hypot(a, bb), hue < 0 ? hue + 360 : hue };
+    }
+
+    private static int fromLch(double l, double c, double h) {
+        double rad = Math.toRadians(h);
+        double a = c * Math.cos(rad);
+        double bb = c * Math.sin(rad);
+        double fy = (l + 16) / 116;
+        double x = 0.95047 * labFInv(fy + a / 500);
+        double y = labFInv(fy);
+        double z = 1.08883 * labFInv(fy - bb / 200);
+        double r = 3.2413774 * x - 1.5376652 * y - 0.49885366 * z;
+        double g = -0.9691452 * x + 1.8758853 * y + 0.04156585 * z;
+        double b = 0.05562093 * x - 0.20395524 * y + 1.0571799 * z;
+        double epsilon = 1e-4;
+        if (r < -epsilon || r > 1 + epsilon || g < -epsilon || g > 1 + epsilon || b < -epsilon || b > 1 + epsilon) {
+            return 0;
+        }
+        return 0xFF000000 | (delinearize(r) << 16) | (delinearize(g) << 8) | delinearize(b);
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389.0 ? Math.cbrt(t) : (24389.0 / 27.0 * t + 16) / 116;
+    }
+
+    private static double labFInv(double ft) {
+        double cube = ft * ft * ft;
+        return cube > 216.0 / 24389.0 ? cube : (116 * ft - 16) / (24389.0 / 27.0);
+    }
+
+    private static double linearize(int channel) {
+        double normalized = channel / 255.0;
+        return normalized <= 0.04045 ? normalized / 12.92 : Math.pow((normalized + 0.055) / 1.055, 2.4);
+    }
+
+    private static int delinearize(double linear) {
+        linear = Math.max(0, Math.min(1, linear));
+        double normalized = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+        return (int) Math.round(normalized * 255);
+    }
+
+    private static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    private static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    private static int blue(int color) {
+        return color & 0xFF;
+    }
+}
@@ -0,0 +1,156 @@
+package sketchlib.sketch.dialog.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Test;
+
+/**
+ * Runs the processor over sample specs and pins the emitted {@code ResolvedStyle} constants to
+ * fixed values, so {@link StyleResolver} cannot drift from {@code Builder.resolveStyle()} and
+ * {@code MaterialDialog.TonalPalette} without a failing build.
+ */
+public class StaticDialogProcessorTest {
+
+    private static final Pattern STYLE = Pattern.compile(
+            "ResolvedStyle (\\w+) = new [\\w.]+\\.ResolvedStyle\\.Builder\\((true|false)\\)(.*?)\\.build\\(\\);",
+            Pattern.DOTALL);
+    private static final Pattern SETTER = Pattern.compile("\\.(set\\w+)\\((0x[0-9A-F]{8})\\)");
+
+    @Test
+    public void materialBaselineMatchesM3Tokens() throws IOException {
+        Map<String, Map<String, Integer>> styles = styles("Baseline",
+                "@StaticDialog(title = \"t\", theme = StaticDialog.Theme.AUTO)");
+
+        assertEquals(material(0xFF6750A4, 0xFFF3EDF7, 0xFFFFFFFF, 0xFF1D1B20, 0xFF49454F,
+                0xFFEADDFF, 0xFF79747E, 0x1F6750A4, 0xFF7965AF), styles.get("LIGHT_STYLE"));
+        assertEquals(material(0xFF6750A4, 0xFF2B2930, 0xFFFFFFFF, 0xFFE6E0E9, 0xFFCAC4D0,
+                0xFF4F378B, 0xFF938F99, 0x1F6750A4, 0xFF7965AF), styles.get("DARK_STYLE"));
+    }
+
+    @Test
+    public void materialCustomSeedMatchesRuntimePalette() throws IOException {
+        Map<String, Map<String, Integer>> styles = styles("Custom",
+                "@StaticDialog(title = \"t\", theme = StaticDialog.Theme.AUTO, primaryColor = 0xFF1E88E5)");
+
+        assertEquals(material(0xFF1E88E5, 0xFFEBEEF5, 0xFFFFFFFF, 0xFF191C21, 0xFF414753,
+                0xFFD6E3FF, 0xFF717784, 0x1F1E88E5, 0xFF3996E8), styles.get("LIGHT_STYLE"));
+        assertEquals(material(0xFF1E88E5, 0xFF282A30, 0xFFFFFFFF, 0xFFDFE2EA, 0xFFC0C7D5,
+                0xFF004880, 0xFF8B919E, 0x1F1E88E5, 0xFF3996E8), styles.get("DARK_STYLE"));
+    }
+
+    @Test
+    public void materialSingleThemeEmitsOneStyle() throws IOException {
+        Map<String, Map<String, Integer>> styles = styles("Dark",
+                "@StaticDialog(title = \"t\", theme = StaticDialog.Theme.DARK, backgroundColor = 0xFF101010)");
+
+        assertEquals(Collections.singleton("DARK_STYLE"), styles.keySet());
+        assertEquals(Integer.valueOf(0xFF101010), styles.get("DARK_STYLE").get("setBackgroundColor"));
+    }
+
+    @Test
+    public void simpleDefaults() throws IOException {
+        Map<String, Map<String, Integer>> styles = styles("Simple",
+                "@StaticDialog(kind = StaticDialog.Kind.SIMPLE, title = \"t\", theme = StaticDialog.Theme.AUTO)");
+
+        assertEquals(simple(0xFF582C8E, 0xFFFFFFFF, 0xFF1A1A1A, 0xFF666666, 0xFFF0F0F0, 0xFF333333),
+                styles.get("LIGHT_STYLE"));
+        assertEquals(simple(0xFF582C8E, 0xFF1C1C22, 0xFFFFFFFF, 0xFFA0A0A5, 0xFF2C2C35, 0xFFFFFFFF),
+                styles.get("DARK_STYLE"));
+    }
+
+    @Test
+    public void defaultThemeEmitsNoStyle() throws IOException {
+        assertTrue(styles("Plain", "@StaticDialog(title = \"t\", primaryColor = 0xFF1E88E5)").isEmpty());
+    }
+
+    private static Map<String, Integer> material(int... colors) {
+        return roles(StyleResolver.MATERIAL_ROLES, colors);
+    }
+
+    private static Map<String, Integer> simple(int... colors) {
+        return roles(StyleResolver.SIMPLE_ROLES, colors);
+    }
+
+    private static Map<String, Integer> roles(String[] setters, int[] colors) {
+        assertEquals(setters.length, colors.length);
+        Map<String, Integer> roles = new LinkedHashMap<>();
+        for (int i = 0; i < setters.length; i++) roles.put(setters[i], colors[i]);
+        return roles;
+    }
+
+    private static Map<String, Map<String, Integer>> styles(String name, String annotation) throws IOException {
+        String generated = generate(name, annotation);
+        Map<String, Map<String, Integer>> styles = new LinkedHashMap<>();
+        Matcher style = STYLE.matcher(generated);
+        while (style.find()) {
+            Map<String, Integer> roles = new LinkedHashMap<>();
+            Matcher setter = SETTER.matcher(style.group(3));
+            while (setter.find()) roles.put(setter.group(1), (int) Long.parseLong(setter.group(2).substring(2), 16));
+            assertEquals(style.group(1).equals("DARK_STYLE"), Boolean.parseBoolean(style.group(2)));
+            styles.put(style.group(1), roles);
+        }
+        return styles;
+    }
+
+    /**
+     * Compiles one spec with {@code -proc:only} and returns the generated factory. The factory
+     * refers to Android types that are not on the test classpath, so errors reported against
+     * generated files are expected; anything else fails the test.
+     */
+    private static String generate(String name, String annotation) throws IOException {
+        Path root = Files.createTempDirectory("static-dialog");
+        try {
+            Path sources = Files.createDirectories(root.resolve("src/demo"));
+            Path generated = Files.createDirectories(root.resolve("gen"));
+            Path spec = sources.resolve(name + ".java");
+            String source = "package demo;\n\n"
+                    + "import sketchlib.sketch.dialog.annotations.StaticDialog;\n\n"
+                    + annotation + "\n"
+                    + "interface " + name + " {}\n";
+            Files.write(spec, source.getBytes(StandardCharsets.UTF_8));
+
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+                JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                        Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path"),
+                                "-s", generated.toString()),
+                        null, files.getJavaFileObjects(spec.toFile()));
+                task.setProcessors(Collections.singleton(new StaticDialogProcessor()));
+                task.call();
+            }
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() != Diagnostic.Kind.ERROR) continue;
+                JavaFileObject file = diagnostic.getSource();
+                if (file != null && new File(file.toUri()).toPath().startsWith(generated)) continue;
+                fail(diagnostic.toString());
+            }
+            return new String(Files.readAllBytes(generated.resolve("demo/" + name + "Factory.java")), StandardCharsets.UTF_8);
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
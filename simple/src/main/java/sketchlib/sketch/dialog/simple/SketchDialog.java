@@ -1,27 +1,53 @@
 package sketchlib.sketch.dialog.simple;
 
+import android.app.Activity;
 import android.app.Dialog;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.ContextWrapper;
 import android.content.res.ColorStateList;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.RectF;
+import android.graphics.RenderEffect;
+import android.graphics.Shader;
 import android.graphics.Typeface;
 import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.StateListDrawable;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.text.Editable;
+import android.text.Html;
+import android.text.InputType;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.text.method.LinkMovementMethod;
+import android.util.LruCache;
 import android.os.Bundle;
 import android.util.TypedValue;
 import android.view.Gravity;
+import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.OvershootInterpolator;
+import android.widget.EditText;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -29,27 +55,142 @@ import android.widget.ProgressBar;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.activity.ComponentActivity;
+import androidx.activity.OnBackPressedCallback;
+
 public class SketchDialog extends Dialog {
 
     public enum Theme { LIGHT, DARK, AUTO }
     public enum Animation { NONE, ZOOM, FADE, SLIDE_BOTTOM }
     public enum ProgressStyle { NONE, SPINNER, HORIZONTAL, CIRCULAR }
 
-    private static Theme defaultTheme = Theme.AUTO;
-    private static Animation defaultAnimation = Animation.ZOOM;
-    private static Integer defaultBackgroundColor = null;
-    private static Integer defaultPrimaryColor = null;
-    private static boolean defaultGlassyMode = false;
+    /** Validates input text off the main thread. Returns an error message, or {@code null} when valid. */
+    public interface InputValidator {
+        String validate(String input);
+    }
+
+    private static final AtomicReference<DefaultsState> defaultsState =
+    new AtomicReference<>(new DefaultsState(DialogDefaults.INITIAL, new ScopedDefaults[0]));
 
     private ProgressBar mProgressBar;
     private TextView mProgressText;
     private CircularProgressView mCircularView;
 
-    public static void setDefaultTheme(Theme theme) { defaultTheme = theme; }
-    public static void setDefaultAnimation(Animation animation) { defaultAnimation = animation; }
-    public static void setDefaultBackgroundColor(int color) { defaultBackgroundColor = color; }
-    public static void setDefaultPrimaryColor(int color) { defaultPrimaryColor = color; }
-    public static void setDefaultGlassyMode(boolean enable) { defaultGlassyMode = enable; }
+    private boolean mTracing;
+    private boolean mOverlayMode;
+    private View mOverlayContent;
+    private int mOverlayWidth;
+    private boolean mOverlayGlassy;
+    private boolean mOverlayCancelable = true;
+    private boolean mOverlayCanceledOnTouchOutside = true;
+    private FrameLayout mOverlayScrim;
+    private boolean mCountedVisible;
+    private View mOverlayBlurredView;
+    private OnBackPressedCallback mOverlayBackCallback;
+    private Runnable mEntryAnimation;
+    private OnShowListener mOverlayShowListener;
+    private OnDismissListener mOverlayDismissListener;
+    private OnCancelListener mOverlayCancelListener;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mValidationGeneration = new AtomicInteger();
+    private EditText mInputField;
+    private TextView mInputError;
+    private View mPositiveButton;
+    private InputValidator mInputValidator;
+    private Executor mValidationExecutor;
+    private boolean mKeepOpenUntilValid;
+    private boolean mInputValid = true;
+    private boolean mValidationPending;
+    private Runnable mPendingValidation;
+    private Runnable mPendingPositiveAction;
+
+    public static void setDefaultTheme(Theme theme) { updateDefaults(d -> d.withTheme(theme)); }
+    public static void setDefaultAnimation(Animation animation) { updateDefaults(d -> d.withAnimation(animation)); }
+    public static void setDefaultBackgroundColor(int color) { updateDefaults(d -> d.withBackgroundColor(color)); }
+    public static void setDefaultPrimaryColor(int color) { updateDefaults(d -> d.withPrimaryColor(color)); }
+    public static void setDefaultGlassyMode(boolean enable) { updateDefaults(d -> d.withGlassyMode(enable)); }
+    public static void setDefaultTracing(boolean enable) { updateDefaults(d -> d.withTracing(enable)); }
+
+    /** Returns the current process-wide defaults snapshot. */
+    public static DialogDefaults getDefaults() { return defaultsState.get().global; }
+
+    /** Atomically replaces the process-wide defaults. */
+    public static void setDefaults(DialogDefaults defaults) {
+        if (defaults == null) throw new NullPointerException("defaults == null");
+        updateDefaults(d -> defaults);
+    }
+
+    /**
+     * Overrides the defaults for dialogs built with {@code scope} (usually an Activity) or any
+     * context wrapping it. The scope must not be null and is held weakly; pass {@code null}
+     * defaults to remove the override.
+     */
+    public static void setDefaults(Context scope, DialogDefaults defaults) {
+        if (scope == null) throw new NullPointerException("scope == null");
+        while (true) {
+            DefaultsState current = defaultsState.get();
+            if (defaultsState.compareAndSet(current, current.withScope(scope, defaults))) {
+                DrawableCache.clear();
+                return;
+            }
+        }
+    }
+
+    /** Resolves the defaults that apply to {@code context}, honouring scoped overrides. */
+    public static DialogDefaults getDefaults(Context context) {
+        return defaultsState.get().resolve(context);
+    }
+
+    /** Debug snapshot of the shared button/background drawable cache. */
+    public static DrawableCacheStats getDrawableCacheStats() { return DrawableCache.stats(); }
+    public static void clearDrawableCache() { DrawableCache.clear(); }
+
+    /** Drops the cached bitmaps decoded from {@code uri}, e.g. after the image behind it changed. */
+    public static void evictIcon(Uri uri) {
+        if (uri == null) throw new NullPointerException("uri == null");
+        IconLoader.evict(uri);
+    }
+    public static void clearIconCache() { IconLoader.clear(); }
+
+    private static void updateDefaults(DefaultsUpdate update) {
+        while (true) {
+            DefaultsState current = defaultsState.get();
+            DefaultsState next = current.withGlobal(update.apply(current.global));
+            if (defaultsState.compareAndSet(current, next)) {
+                // Drawables built from the old defaults are unlikely to be requested again.
+                DrawableCache.clear();
+                return;
+            }
+        }
+    }
 
     private SketchDialog(Context context) {
         super(context);
@@ -65,24 +206,448 @@ public class SketchDialog extends Dialog {
         if (mProgressText != null) {
             mProgressText.setText(progress + "%");
         }
+        DialogTrace.counter(DialogTrace.isActive(mTracing), "SketchDialog#progress", progress);
+    }
+
+    public String getInputText() {
+        return mInputField != null ? mInputField.getText().toString() : null;
+    }
+
+    @Override
+    public void show() {
+        // A dismiss interrupts validation; resume it so the buttons don't stay stuck on a stale state.
+        if (mValidationPending && mPendingValidation == null) scheduleValidation(0);
+        boolean wasShowing = isShowing();
+        if (!mOverlayMode) {
+            super.show();
+        } else {
+            boolean trace = DialogTrace.isActive(mTracing);
+            DialogTrace.begin(trace, "SketchDialog.attachOverlay");
+            try {
+                showOverlay();
+            } finally {
+                DialogTrace.end(trace);
+            }
+        }
+        if (!wasShowing && isShowing()) setCountedVisible(true);
+    }
+
+    private void showOverlay() {
+        if (mOverlayScrim != null) return;
+        Activity activity = findActivity(getContext());
+        if (activity == null) return;
+
+        FrameLayout scrim = new OverlayScrim(getContext());
+        scrim.setBackgroundColor(Color.argb(153, 0, 0, 0));
+        scrim.setClickable(true);
+        scrim.setFocusable(true);
+        scrim.setFocusableInTouchMode(true);
+        scrim.setOnClickListener(v -> {
+            if (mOverlayCancelable && mOverlayCanceledOnTouchOutside) cancel();
+        });
+
+        mOverlayContent.setClickable(true);
+        FrameLayout.LayoutParams contentParams = new FrameLayout.LayoutParams(mOverlayWidth, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.CENTER);
+        scrim.addView(mOverlayContent, contentParams);
+
+        ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+        decor.addView(scrim, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        scrim.requestFocus();
+        mOverlayScrim = scrim;
+
+        // Apps opted into predictive back never see KEYCODE_BACK, so route it through the dispatcher too.
+        if (activity instanceof ComponentActivity) {
+            OnBackPressedCallback callback = new OnBackPressedCallback(true) {
+                @Override
+                public void handleOnBackPressed() {
+                    if (mOverlayCancelable) cancel();
+                }
+            };
+            ((ComponentActivity) activity).getOnBackPressedDispatcher().addCallback(callback);
+            mOverlayBackCallback = callback;
+        }
+
+        if (mOverlayGlassy && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            View content = activity.findViewById(android.R.id.content);
+            if (content != null) {
+                content.setRenderEffect(RenderEffect.createBlurEffect(40f, 40f, Shader.TileMode.CLAMP));
+                mOverlayBlurredView = content;
+            }
+        }
+
+        scrim.setAlpha(0f);
+        scrim.animate().alpha(1f).setDuration(150).start();
+        if (mEntryAnimation != null) mEntryAnimation.run();
+        if (mOverlayShowListener != null) mOverlayShowListener.onShow(this);
+    }
+
+    @Override
+    public void dismiss() {
+        cancelValidation();
+        boolean wasShowing = isShowing();
+        if (!mOverlayMode) {
+            super.dismiss();
+        } else {
+            dismissOverlay();
+        }
+        if (wasShowing && !isShowing()) setCountedVisible(false);
+    }
+
+    private void dismissOverlay() {
+        if (mOverlayScrim == null) return;
+        FrameLayout scrim = mOverlayScrim;
+        mOverlayScrim = null;
+
+        if (mOverlayBackCallback != null) mOverlayBackCallback.remove();
+        mOverlayBackCallback = null;
+        if (mOverlayBlurredView != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            mOverlayBlurredView.setRenderEffect(null);
+        }
+        mOverlayBlurredView = null;
+
+        scrim.animate().cancel();
+        scrim.removeAllViews();
+        if (scrim.getParent() != null) {
+            ((ViewGroup) scrim.getParent()).removeView(scrim);
+        }
+        if (mOverlayDismissListener != null) mOverlayDismissListener.onDismiss(this);
+    }
+
+    @Override
+    public void cancel() {
+        if (!mOverlayMode) {
+            super.cancel();
+            return;
+        }
+        if (mOverlayScrim != null && mOverlayCancelListener != null) mOverlayCancelListener.onCancel(this);
+        dismiss();
+    }
+
+    // A window torn down with its Activity never goes through dismiss(), so these also settle the count.
+    @Override
+    protected void onStop() {
+        super.onStop();
+        setCountedVisible(false);
+    }
+
+    @Override
+    public void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        setCountedVisible(false);
+    }
+
+    private void setCountedVisible(boolean visible) {
+        if (mCountedVisible == visible) return;
+        mCountedVisible = visible;
+        DialogTrace.onVisibilityChanged(mTracing, visible);
+    }
+
+    @Override
+    public boolean isShowing() {
+        return mOverlayMode ? mOverlayScrim != null : super.isShowing();
+    }
+
+    @Override
+    public <T extends View> T findViewById(int id) {
+        // In overlay mode the dialog window is never shown; the content lives in the scrim.
+        if (mOverlayMode && mOverlayContent != null) return mOverlayContent.findViewById(id);
+        return super.findViewById(id);
+    }
+
+    @Override
+    public void setCancelable(boolean flag) {
+        super.setCancelable(flag);
+        mOverlayCancelable = flag;
+    }
+
+    @Override
+    public void setCanceledOnTouchOutside(boolean cancel) {
+        super.setCanceledOnTouchOutside(cancel);
+        // Like the framework Dialog, allowing outside touches also makes the dialog cancelable.
+        if (cancel) mOverlayCancelable = true;
+        mOverlayCanceledOnTouchOutside = cancel;
+    }
+
+    @Override
+    public void setOnShowListener(OnShowListener listener) {
+        super.setOnShowListener(listener);
+        mOverlayShowListener = listener;
+    }
+
+    @Override
+    public void setOnDismissListener(OnDismissListener listener) {
+        super.setOnDismissListener(listener);
+        mOverlayDismissListener = listener;
+    }
+
+    @Override
+    public void setOnCancelListener(OnCancelListener listener) {
+        super.setOnCancelListener(listener);
+        mOverlayCancelListener = listener;
+    }
+
+    /**
+     * Debounces validation of the current input. Each call supersedes the previous one: a queued
+     * validation that has not started yet is skipped, and a late result for older text is dropped.
+     */
+    private void scheduleValidation(long delayMillis) {
+        if (mInputValidator == null) return;
+        int generation = mValidationGeneration.incrementAndGet();
+        String input = getInputText();
+        mValidationPending = true;
+        updatePositiveState();
+        if (mPendingValidation != null) mMainHandler.removeCallbacks(mPendingValidation);
+        mPendingValidation = () -> {
+            mPendingValidation = null;
+            try {
+                mValidationExecutor.execute(() -> {
+                    if (mValidationGeneration.get() != generation) return;
+                    String error;
+                    try {
+                        error = mInputValidator.validate(input);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        // Keep the input invalid but say why; an empty error would hide the error line.
+                        error = e.getMessage() != null && !e.getMessage().isEmpty() ? e.getMessage() : "Validation failed";
+                    }
+                    String result = error;
+                    mMainHandler.post(() -> onValidationResult(generation, result));
+                });
+            } catch (RejectedExecutionException e) {
+                // A shut-down or saturated executor must not crash the UI thread; keep the input invalid.
+                onValidationResult(generation, "Validation failed");
+            }
+        };
+        mMainHandler.postDelayed(mPendingValidation, delayMillis);
+    }
+
+    private void onValidationResult(int generation, String error) {
+        if (generation != mValidationGeneration.get()) return;
+        mValidationPending = false;
+        mInputValid = error == null;
+        if (mInputError != null) {
+            mInputError.setText(error);
+            mInputError.setVisibility(error == null || error.isEmpty() ? View.GONE : View.VISIBLE);
+        }
+        updatePositiveState();
+        Runnable action = mPendingPositiveAction;
+        mPendingPositiveAction = null;
+        if (action != null && mInputValid) action.run();
+    }
+
+    private void cancelValidation() {
+        mValidationGeneration.incrementAndGet();
+        if (mPendingValidation != null) mMainHandler.removeCallbacks(mPendingValidation);
+        mPendingValidation = null;
+        mPendingPositiveAction = null;
+    }
+
+    private void updatePositiveState() {
+        if (mPositiveButton == null || mKeepOpenUntilValid) return;
+        // Follow the last result while a newer one is pending; performPositive() defers clicks meanwhile.
+        boolean enabled = mInputValid;
+        mPositiveButton.setEnabled(enabled);
+        mPositiveButton.setAlpha(enabled ? 1f : 0.38f);
+    }
+
+    private void performPositive(Runnable action) {
+        if (mInputValidator == null || (mInputValid && !mValidationPending)) {
+            action.run();
+        } else if (mValidationPending) {
+            // Finish the click once the in-flight validation for the current text passes.
+            mPendingPositiveAction = action;
+        }
+    }
+
+    /** Sees BACK before the focused child does, so an EditText or custom view can't leak it to the Activity. */
+    private final class OverlayScrim extends FrameLayout {
+        OverlayScrim(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean dispatchKeyEvent(KeyEvent event) {
+            if (event.getKeyCode() != KeyEvent.KEYCODE_BACK) return super.dispatchKeyEvent(event);
+            if (event.getAction() == KeyEvent.ACTION_UP && !event.isCanceled() && mOverlayCancelable) cancel();
+            return true;
+        }
+
+        @Override
+        protected void onDetachedFromWindow() {
+            super.onDetachedFromWindow();
+            setCountedVisible(false);
+        }
+    }
+
+    private static Activity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) return (Activity) context;
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * Immutable snapshot of the global dialog configuration. Builders read it once at
+     * construction, so a dialog never observes a half-applied update.
+     */
+    public static final class DialogDefaults {
+        public static final DialogDefaults INITIAL = new DialogDefaults(Theme.AUTO, Animation.ZOOM, null, null, false, false);
+
+        private final Theme theme;
+        private final Animation animation;
+        private final Integer backgroundColor;
+        private final Integer primaryColor;
+        private final boolean glassyMode;
+        private final boolean tracing;
+
+        private DialogDefaults(Theme theme, Animation animation, Integer backgroundColor, Integer primaryColor, boolean glassyMode, boolean tracing) {
+            this.theme = theme;
+            this.animation = animation;
+            this.backgroundColor = backgroundColor;
+            this.primaryColor = primaryColor;
+            this.glassyMode = glassyMode;
+            this.tracing = tracing;
+        }
+
+        public Theme getTheme() { return theme; }
+        public Animation getAnimation() { return animation; }
+        public Integer getBackgroundColor() { return backgroundColor; }
+        public Integer getPrimaryColor() { return primaryColor; }
+        public boolean isGlassyMode() { return glassyMode; }
+        public boolean isTracing() { return tracing; }
+
+        public DialogDefaults withTheme(Theme theme) {
+            return new DialogDefaults(theme, animation, backgroundColor, primaryColor, glassyMode, tracing);
+        }
+        public DialogDefaults withAnimation(Animation animation) {
+            return new DialogDefaults(theme, animation, backgroundColor, primaryColor, glassyMode, tracing);
+        }
+        public DialogDefaults withBackgroundColor(Integer color) {
+            return new DialogDefaults(theme, animation, color, primaryColor, glassyMode, tracing);
+        }
+        public DialogDefaults withPrimaryColor(Integer color) {
+            return new DialogDefaults(theme, animation, backgroundColor, color, glassyMode, tracing);
+        }
+        public DialogDefaults withGlassyMode(boolean enable) {
+            return new DialogDefaults(theme, animation, backgroundColor, primaryColor, enable, tracing);
+        }
+        public DialogDefaults withTracing(boolean enable) {
+            return new DialogDefaults(theme, animation, backgroundColor, primaryColor, glassyMode, enable);
+        }
+    }
+
+    /**
+     * Final colors for one dialog, normally emitted as constants by the {@code @StaticDialog} processor
+     * so build() can skip theme and defaults resolution.
+     */
+    public static final class ResolvedStyle {
+        final boolean dark;
+        final int primaryColor;
+        final int backgroundColor;
+        final int titleColor;
+        final int messageColor;
+        final int negativeButtonColor;
+        final int negativeTextColor;
+
+        private ResolvedStyle(Builder builder) {
+            this.dark = builder.dark;
+            this.primaryColor = builder.primaryColor;
+            this.backgroundColor = builder.backgroundColor;
+            this.titleColor = builder.titleColor;
+            this.messageColor = builder.messageColor;
+            this.negativeButtonColor = builder.negativeButtonColor;
+            this.negativeTextColor = builder.negativeTextColor;
+        }
+
+        /** Collects the colors by role; {@link #build()} fails if any role was left unset. */
+        public static final class Builder {
+            private final boolean dark;
+            private Integer primaryColor;
+            private Integer backgroundColor;
+            private Integer titleColor;
+            private Integer messageColor;
+            private Integer negativeButtonColor;
+            private Integer negativeTextColor;
+
+            public Builder(boolean dark) {
+                this.dark = dark;
+            }
+
+            public Builder setPrimaryColor(int color) { this.primaryColor = color; return this; }
+            public Builder setBackgroundColor(int color) { this.backgroundColor = color; return this; }
+            public Builder setTitleColor(int color) { this.titleColor = color; return this; }
+            public Builder setMessageColor(int color) { this.messageColor = color; return this; }
+            public Builder setNegativeButtonColor(int color) { this.negativeButtonColor = color; return this; }
+            public Builder setNegativeTextColor(int color) { this.negativeTextColor = color; return this; }
+
+            public ResolvedStyle build() {
+                if (primaryColor == null) throw new IllegalStateException("primaryColor not set");
+                if (backgroundColor == null) throw new IllegalStateException("backgroundColor not set");
+                if (titleColor == null) throw new IllegalStateException("titleColor not set");
+                if (messageColor == null) throw new IllegalStateException("messageColor not set");
+                if (negativeButtonColor == null) throw new IllegalStateException("negativeButtonColor not set");
+                if (negativeTextColor == null) throw new IllegalStateException("negativeTextColor not set");
+                return new ResolvedStyle(this);
+            }
+        }
+    }
+
+    public static final class DrawableCacheStats {
+        public final int hits;
+        public final int misses;
+        public final int evictions;
+        public final int size;
+        public final int maxSize;
+
+        private DrawableCacheStats(int hits, int misses, int evictions, int size, int maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return "DrawableCacheStats[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+            + ", size=" + size + "/" + maxSize + "]";
+        }
     }
 
     public static class Builder {
         private final Context context;
+        private final DialogDefaults defaults;
         private String title;
         private String message;
+        private String messageHtml;
+        private String messageMarkdown;
         private String positiveText;
         private String negativeText;
         private int iconResId = -1;
+        private Uri iconUri;
+        private int iconPlaceholderResId = -1;
         private boolean cancelable = true;
         private ProgressStyle progressStyle = ProgressStyle.NONE;
 
-        private Theme theme = defaultTheme;
-        private Animation animation = defaultAnimation;
+        private Theme theme;
+        private Animation animation;
         private Integer primaryColor = null;
         private Integer backgroundColor = null;
         private Integer iconTintColor = null;
-        private boolean glassyMode = defaultGlassyMode;
+        private boolean glassyMode;
+        private boolean overlayMode = false;
+        private boolean tracing;
+        private ResolvedStyle resolvedStyle;
+
+        private boolean hasInput;
+        private String inputHint;
+        private String inputPrefill;
+        private int inputType = InputType.TYPE_CLASS_TEXT;
+        private InputValidator inputValidator;
+        private Executor validationExecutor;
+        private long validationDebounceMillis = 300;
+        private boolean keepOpenUntilValid;
 
         private View customView;
         private boolean wrapInScrollView;
@@ -92,17 +657,35 @@ public class SketchDialog extends Dialog {
 
         public Builder(Context context) {
             this.context = context;
+            this.defaults = getDefaults(context);
+            this.theme = defaults.theme;
+            this.animation = defaults.animation;
+            this.glassyMode = defaults.glassyMode;
+            this.tracing = defaults.tracing;
         }
 
         public Builder setTitle(String title) { this.title = title; return this; }
-        public Builder setMessage(String message) { this.message = message; return this; }
+        public Builder setMessage(String message) {
+            this.message = message; this.messageHtml = null; this.messageMarkdown = null; return this;
+        }
+        public Builder setMessageHtml(String html) {
+            this.messageHtml = html; this.message = null; this.messageMarkdown = null; return this;
+        }
+        public Builder setMessageMarkdown(String markdown) {
+            this.messageMarkdown = markdown; this.message = null; this.messageHtml = null; return this;
+        }
         public Builder setPositiveButton(String text, View.OnClickListener listener) {
             this.positiveText = text; this.positiveListener = listener; return this;
         }
         public Builder setNegativeButton(String text, View.OnClickListener listener) {
             this.negativeText = text; this.negativeListener = listener; return this;
         }
-        public Builder setIcon(int iconResId) { this.iconResId = iconResId; return this; }
+        public Builder setPositiveListener(View.OnClickListener listener) { this.positiveListener = listener; return this; }
+        public Builder setNegativeListener(View.OnClickListener listener) { this.negativeListener = listener; return this; }
+        public Builder setIcon(int iconResId) { this.iconResId = iconResId; this.iconUri = null; return this; }
+        public Builder setIcon(Uri uri) { this.iconUri = uri; this.iconResId = -1; return this; }
+        public Builder setIcon(File file) { return setIcon(Uri.fromFile(file)); }
+        public Builder setIconPlaceholder(int resId) { this.iconPlaceholderResId = resId; return this; }
         public Builder setIconTint(int color) { this.iconTintColor = color; return this; }
         public Builder setCancelable(boolean cancelable) { this.cancelable = cancelable; return this; }
         public Builder setPrimaryColor(int color) { this.primaryColor = color; return this; }
@@ -110,6 +693,23 @@ public class SketchDialog extends Dialog {
         public Builder setTheme(Theme theme) { this.theme = theme; return this; }
         public Builder setAnimation(Animation animation) { this.animation = animation; return this; }
         public Builder setGlassyMode(boolean enable) { this.glassyMode = enable; return this; }
+        public Builder setOverlayMode(boolean enable) { this.overlayMode = enable; return this; }
+        public Builder setTracing(boolean enable) { this.tracing = enable; return this; }
+        /** Uses precomputed colors as-is; theme, primary and background color settings are then ignored. */
+        public Builder setResolvedStyle(ResolvedStyle style) { this.resolvedStyle = style; return this; }
+
+        public Builder setInput(String hint, String prefill) {
+            this.hasInput = true; this.inputHint = hint; this.inputPrefill = prefill; return this;
+        }
+        public Builder setInput(String hint, String prefill, int inputType) {
+            this.inputType = inputType; return setInput(hint, prefill);
+        }
+        public Builder setInputValidator(Executor executor, InputValidator validator) {
+            if (validator != null && executor == null) throw new NullPointerException("executor == null");
+            this.validationExecutor = executor; this.inputValidator = validator; return this;
+        }
+        public Builder setInputDebounce(long millis) { this.validationDebounceMillis = millis; return this; }
+        public Builder setKeepOpenUntilValid(boolean keepOpen) { this.keepOpenUntilValid = keepOpen; return this; }
 
         public Builder customView(View view, boolean wrapInScrollView) {
             this.customView = view;
@@ -132,9 +732,16 @@ public class SketchDialog extends Dialog {
 
         public SketchDialog build() {
             SketchDialog dialog = new SketchDialog(context);
-            dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
-            if (dialog.getWindow() != null) {
-                dialog.getWindow().setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+            boolean trace = DialogTrace.isActive(tracing);
+            dialog.mTracing = tracing;
+            // Overlay mode attaches the content to the host Activity's decor view, so the
+            // dialog window is never added to the WindowManager.
+            boolean useOverlay = overlayMode && findActivity(context) != null;
+            dialog.mOverlayMode = useOverlay;
+            dialog.mOverlayGlassy = glassyMode;
+            if (!useOverlay) dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+            if (!useOverlay && dialog.getWindow() != null) {
+                dialog.getWindow().setBackgroundDrawable(DrawableCache.solid(Color.TRANSPARENT));
                 if (glassyMode && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
                     dialog.getWindow().addFlags(android.view.WindowManager.LayoutParams.FLAG_BLUR_BEHIND);
                     dialog.getWindow().getAttributes().setBlurBehindRadius(40);
@@ -142,222 +749,307 @@ public class SketchDialog extends Dialog {
             }
             dialog.setCancelable(cancelable);
 
-            boolean isDark = false;
-            if (theme == Theme.DARK) {
-                isDark = true;
-            } else if (theme == Theme.AUTO) {
-                isDark = (context.getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+            ResolvedStyle style;
+            DialogTrace.begin(trace, "SketchDialog.resolveStyle");
+            try {
+                style = resolvedStyle != null ? resolvedStyle : resolveStyle();
+            } finally {
+                DialogTrace.end(trace);
             }
+            boolean isDark = style.dark;
+            int finalPrimaryColor = style.primaryColor;
+            int finalBgColor = style.backgroundColor;
+            int titleColor = style.titleColor;
+            int msgColor = style.messageColor;
+            int btnNegBg = style.negativeButtonColor;
+            int btnNegText = style.negativeTextColor;
 
-            int finalPrimaryColor;
-            if (primaryColor != null) {
-                finalPrimaryColor = primaryColor;
-            } else if (defaultPrimaryColor != null) {
-                finalPrimaryColor = defaultPrimaryColor;
-            } else {
-                finalPrimaryColor = Color.parseColor("#582C8E");
-            }
+            LinearLayout rootLayout = new LinearLayout(context);
+            DialogTrace.begin(trace, "SketchDialog.buildBackground");
+            try {
+                rootLayout.setOrientation(LinearLayout.VERTICAL);
+                rootLayout.setGravity(Gravity.CENTER_HORIZONTAL);
+                int padding = dpToPx(context, 24);
+                rootLayout.setPadding(padding, padding, padding, padding);
 
-            int finalBgColor;
-            if (backgroundColor != null) {
-                finalBgColor = backgroundColor;
-            } else if (defaultBackgroundColor != null) {
-                finalBgColor = defaultBackgroundColor;
-            } else {
-                finalBgColor = isDark ? Color.parseColor("#1C1C22") : Color.parseColor("#FFFFFF");
+                if (glassyMode) {
+                    int alphaBg = Color.argb(isDark ? 160 : 190, Color.red(finalBgColor), Color.green(finalBgColor), Color.blue(finalBgColor));
+                    int strokeColor = isDark ? Color.argb(30, 255, 255, 255) : Color.argb(80, 255, 255, 255);
+                    rootLayout.setBackground(DrawableCache.rounded(context, alphaBg, dpToPx(context, 16), dpToPx(context, 1), strokeColor));
+                } else {
+                    rootLayout.setBackground(DrawableCache.rounded(context, finalBgColor, dpToPx(context, 16), 0, 0));
+                }
+            } finally {
+                DialogTrace.end(trace);
             }
 
-            int titleColor = isDark ? Color.parseColor("#FFFFFF") : Color.parseColor("#1A1A1A");
-            int msgColor = isDark ? Color.parseColor("#A0A0A5") : Color.parseColor("#666666");
-            int btnNegBg = isDark ? Color.parseColor("#2C2C35") : Color.parseColor("#F0F0F0");
-            int btnNegText = isDark ? Color.parseColor("#FFFFFF") : Color.parseColor("#333333");
+            DialogTrace.begin(trace, progressStyle != ProgressStyle.NONE ? "SketchDialog.buildProgress" : "SketchDialog.buildIcon");
+            try {
+                if (progressStyle == ProgressStyle.HORIZONTAL) {
+                    ProgressBar progressBar = new ProgressBar(context, null, android.R.attr.progressBarStyleHorizontal);
+                    progressBar.setMax(100);
+                    progressBar.setProgress(0);
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        progressBar.setProgressTintList(ColorStateList.valueOf(finalPrimaryColor));
+                    } else {
+                        progressBar.getProgressDrawable().setColorFilter(finalPrimaryColor, PorterDuff.Mode.SRC_IN);
+                    }
+                    LinearLayout.LayoutParams progressParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, dpToPx(context, 8));
+                    progressParams.bottomMargin = dpToPx(context, 4);
+                    rootLayout.addView(progressBar, progressParams);
 
-            LinearLayout rootLayout = new LinearLayout(context);
-            rootLayout.setOrientation(LinearLayout.VERTICAL);
-            rootLayout.setGravity(Gravity.CENTER_HORIZONTAL);
-            int padding = dpToPx(context, 24);
-            rootLayout.setPadding(padding, padding, padding, padding);
-
-            GradientDrawable bgDrawable = new GradientDrawable();
-            if (glassyMode) {
-                int alphaBg = Color.argb(isDark ? 160 : 190, Color.red(finalBgColor), Color.green(finalBgColor), Color.blue(finalBgColor));
-                bgDrawable.setColor(alphaBg);
-                int strokeColor = isDark ? Color.argb(30, 255, 255, 255) : Color.argb(80, 255, 255, 255);
-                bgDrawable.setStroke(dpToPx(context, 1), strokeColor);
-            } else {
-                bgDrawable.setColor(finalBgColor);
-            }
-            bgDrawable.setCornerRadius(dpToPx(context, 16));
-            rootLayout.setBackground(bgDrawable);
+                    TextView progressText = new TextView(context);
+                    progressText.setText("0%");
+                    progressText.setTextColor(msgColor);
+                    progressText.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+                    progressText.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+                    progressText.setGravity(Gravity.END);
+                    LinearLayout.LayoutParams textParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    textParams.bottomMargin = dpToPx(context, 16);
+                    rootLayout.addView(progressText, textParams);
 
-            if (progressStyle == ProgressStyle.HORIZONTAL) {
-                ProgressBar progressBar = new ProgressBar(context, null, android.R.attr.progressBarStyleHorizontal);
-                progressBar.setMax(100);
-                progressBar.setProgress(0);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    progressBar.setProgressTintList(ColorStateList.valueOf(finalPrimaryColor));
-                } else {
-                    progressBar.getProgressDrawable().setColorFilter(finalPrimaryColor, PorterDuff.Mode.SRC_IN);
-                }
-                LinearLayout.LayoutParams progressParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, dpToPx(context, 8));
-                progressParams.bottomMargin = dpToPx(context, 4);
-                rootLayout.addView(progressBar, progressParams);
-
-                TextView progressText = new TextView(context);
-                progressText.setText("0%");
-                progressText.setTextColor(msgColor);
-                progressText.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
-                progressText.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
-                progressText.setGravity(Gravity.END);
-                LinearLayout.LayoutParams textParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-                textParams.bottomMargin = dpToPx(context, 16);
-                rootLayout.addView(progressText, textParams);
-
-                dialog.mProgressBar = progressBar;
-                dialog.mProgressText = progressText;
-            } else if (progressStyle == ProgressStyle.CIRCULAR) {
-                FrameLayout frameLayout = new FrameLayout(context);
-                LinearLayout.LayoutParams frameParams = new LinearLayout.LayoutParams(dpToPx(context, 72), dpToPx(context, 72));
-                frameParams.bottomMargin = dpToPx(context, 16);
-                rootLayout.addView(frameLayout, frameParams);
-
-                CircularProgressView circularView = new CircularProgressView(context, finalPrimaryColor);
-                frameLayout.addView(circularView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
-
-                TextView progressText = new TextView(context);
-                progressText.setText("0%");
-                progressText.setTextColor(msgColor);
-                progressText.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
-                progressText.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
-                progressText.setGravity(Gravity.CENTER);
-                
-                FrameLayout.LayoutParams textParams = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-                textParams.gravity = Gravity.CENTER;
-                frameLayout.addView(progressText, textParams);
-
-                dialog.mCircularView = circularView;
-                dialog.mProgressText = progressText;
-            } else if (progressStyle == ProgressStyle.SPINNER) {
-                ProgressBar progressBar = new ProgressBar(context);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    progressBar.setIndeterminateTintList(ColorStateList.valueOf(finalPrimaryColor));
-                } else {
-                    progressBar.getIndeterminateDrawable().setColorFilter(finalPrimaryColor, PorterDuff.Mode.SRC_IN);
+                    dialog.mProgressBar = progressBar;
+                    dialog.mProgressText = progressText;
+                } else if (progressStyle == ProgressStyle.CIRCULAR) {
+                    FrameLayout frameLayout = new FrameLayout(context);
+                    LinearLayout.LayoutParams frameParams = new LinearLayout.LayoutParams(dpToPx(context, 72), dpToPx(context, 72));
+                    frameParams.bottomMargin = dpToPx(context, 16);
+                    rootLayout.addView(frameLayout, frameParams);
+
+                    CircularProgressView circularView = new CircularProgressView(context, finalPrimaryColor);
+                    frameLayout.addView(circularView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+                    TextView progressText = new TextView(context);
+                    progressText.setText("0%");
+                    progressText.setTextColor(msgColor);
+                    progressText.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+                    progressText.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+                    progressText.setGravity(Gravity.CENTER);
+
+                    FrameLayout.LayoutParams textParams = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    textParams.gravity = Gravity.CENTER;
+                    frameLayout.addView(progressText, textParams);
+
+                    dialog.mCircularView = circularView;
+                    dialog.mProgressText = progressText;
+                } else if (progressStyle == ProgressStyle.SPINNER) {
+                    ProgressBar progressBar = new ProgressBar(context);
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        progressBar.setIndeterminateTintList(ColorStateList.valueOf(finalPrimaryColor));
+                    } else {
+                        progressBar.getIndeterminateDrawable().setColorFilter(finalPrimaryColor, PorterDuff.Mode.SRC_IN);
+                    }
+                    LinearLayout.LayoutParams progressParams = new LinearLayout.LayoutParams(dpToPx(context, 48), dpToPx(context, 48));
+                    progressParams.bottomMargin = dpToPx(context, 16);
+                    rootLayout.addView(progressBar, progressParams);
+                } else if (iconResId != -1 || iconUri != null) {
+                    ImageView iconView = new ImageView(context);
+                    if (iconUri != null) {
+                        if (iconPlaceholderResId != -1) iconView.setImageResource(iconPlaceholderResId);
+                        IconLoader.load(iconView, iconUri, dpToPx(context, 56), iconTintColor);
+                    } else {
+                        iconView.setImageResource(iconResId);
+                    }
+                    if (iconTintColor != null) {
+                        iconView.setColorFilter(iconTintColor, PorterDuff.Mode.SRC_IN);
+                    }
+                    LinearLayout.LayoutParams iconParams = new LinearLayout.LayoutParams(dpToPx(context, 56), dpToPx(context, 56));
+                    iconParams.bottomMargin = dpToPx(context, 16);
+                    rootLayout.addView(iconView, iconParams);
                 }
-                LinearLayout.LayoutParams progressParams = new LinearLayout.LayoutParams(dpToPx(context, 48), dpToPx(context, 48));
-                progressParams.bottomMargin = dpToPx(context, 16);
-                rootLayout.addView(progressBar, progressParams);
-            } else if (iconResId != -1) {
-                ImageView iconView = new ImageView(context);
-                iconView.setImageResource(iconResId);
-                if (iconTintColor != null) {
-                    iconView.setColorFilter(iconTintColor, PorterDuff.Mode.SRC_IN);
+            } finally {
+                DialogTrace.end(trace);
+            }
+
+            DialogTrace.begin(trace, "SketchDialog.buildText");
+            try {
+                if (title != null) {
+                    TextView titleView = new TextView(context);
+                    titleView.setText(title);
+                    titleView.setTextColor(titleColor);
+                    titleView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 20);
+                    titleView.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+                    titleView.setGravity(Gravity.CENTER);
+                    rootLayout.addView(titleView);
                 }
-                LinearLayout.LayoutParams iconParams = new LinearLayout.LayoutParams(dpToPx(context, 56), dpToPx(context, 56));
-                iconParams.bottomMargin = dpToPx(context, 16);
-                rootLayout.addView(iconView, iconParams);
-            }
-
-            if (title != null) {
-                TextView titleView = new TextView(context);
-                titleView.setText(title);
-                titleView.setTextColor(titleColor);
-                titleView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 20);
-                titleView.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
-                titleView.setGravity(Gravity.CENTER);
-                rootLayout.addView(titleView);
-            }
-
-            if (message != null) {
-                TextView msgView = new TextView(context);
-                msgView.setText(message);
-                msgView.setTextColor(msgColor);
-                msgView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
-                msgView.setGravity(Gravity.CENTER);
-                msgView.setLineSpacing(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, context.getResources().getDisplayMetrics()), 1.0f);
-                LinearLayout.LayoutParams msgParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-                msgParams.topMargin = dpToPx(context, 8);
-                rootLayout.addView(msgView, msgParams);
-            }
-
-            if (customView != null) {
-                if (customView.getParent() != null) {
-                    ((ViewGroup) customView.getParent()).removeView(customView);
+
+                if (message != null || messageHtml != null || messageMarkdown != null) {
+                    TextView msgView = new TextView(context);
+                    if (messageHtml != null) {
+                        RichMessage.bind(msgView, messageHtml, false);
+                    } else if (messageMarkdown != null) {
+                        RichMessage.bind(msgView, messageMarkdown, true);
+                    } else {
+                        msgView.setText(message);
+                    }
+                    msgView.setTextColor(msgColor);
+                    msgView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+                    msgView.setGravity(Gravity.CENTER);
+                    msgView.setLineSpacing(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, context.getResources().getDisplayMetrics()), 1.0f);
+                    LinearLayout.LayoutParams msgParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    msgParams.topMargin = dpToPx(context, 8);
+                    rootLayout.addView(msgView, msgParams);
                 }
-                LinearLayout.LayoutParams customParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-                customParams.topMargin = dpToPx(context, 16);
 
-                if (wrapInScrollView) {
-                    ScrollView scrollView = new ScrollView(context);
-                    scrollView.addView(customView);
-                    rootLayout.addView(scrollView, customParams);
-                } else {
-                    rootLayout.addView(customView, customParams);
+                if (hasInput) {
+                    EditText inputField = new EditText(context);
+                    inputField.setInputType(inputType);
+                    inputField.setHint(inputHint);
+                    inputField.setText(inputPrefill);
+                    inputField.setTextColor(titleColor);
+                    inputField.setHintTextColor(msgColor);
+                    inputField.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
+                    inputField.setBackground(DrawableCache.rounded(context, btnNegBg, dpToPx(context, 12), 0, 0));
+                    int inputPaddingH = dpToPx(context, 16);
+                    int inputPaddingV = dpToPx(context, 12);
+                    inputField.setPadding(inputPaddingH, inputPaddingV, inputPaddingH, inputPaddingV);
+                    LinearLayout.LayoutParams inputParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    inputParams.topMargin = dpToPx(context, 16);
+                    rootLayout.addView(inputField, inputParams);
+
+                    TextView errorView = new TextView(context);
+                    errorView.setTextColor(Color.parseColor("#E53935"));
+                    errorView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+                    errorView.setVisibility(View.GONE);
+                    LinearLayout.LayoutParams errorParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    errorParams.topMargin = dpToPx(context, 4);
+                    errorParams.leftMargin = inputPaddingH;
+                    rootLayout.addView(errorView, errorParams);
+
+                    dialog.mInputField = inputField;
+                    dialog.mInputError = errorView;
+                    dialog.mInputValidator = inputValidator;
+                    dialog.mValidationExecutor = validationExecutor;
+                    dialog.mKeepOpenUntilValid = keepOpenUntilValid;
+                    if (inputValidator != null) {
+                        long debounce = validationDebounceMillis;
+                        inputField.addTextChangedListener(new TextWatcher() {
+                            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+                            @Override public void onTextChanged(CharSequence s, int start, int before, int count) { }
+                            @Override public void afterTextChanged(Editable s) { dialog.scheduleValidation(debounce); }
+                        });
+                    }
                 }
+            } finally {
+                DialogTrace.end(trace);
             }
 
-            if (positiveText != null || negativeText != null) {
-                LinearLayout btnLayout = new LinearLayout(context);
-                btnLayout.setOrientation(LinearLayout.HORIZONTAL);
-                LinearLayout.LayoutParams btnLayoutParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-                btnLayoutParams.topMargin = dpToPx(context, 24);
-                rootLayout.addView(btnLayout, btnLayoutParams);
-
-                boolean isSingleButton = (positiveText == null || negativeText == null);
-
-                if (negativeText != null) {
-                    TextView negBtn = createButton(context, negativeText, btnNegBg, btnNegText, finalPrimaryColor);
-                    LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                            isSingleButton ? ViewGroup.LayoutParams.MATCH_PARENT : 0, 
-                            dpToPx(context, 48), 
-                            isSingleButton ? 0f : 1f);
-                    if (!isSingleButton) params.rightMargin = dpToPx(context, 8);
-                    negBtn.setOnClickListener(v -> {
-                        if (negativeListener != null) negativeListener.onClick(v);
-                        dialog.dismiss();
-                    });
-                    btnLayout.addView(negBtn, params);
+            DialogTrace.begin(trace, "SketchDialog.buildCustomView");
+            try {
+                if (customView != null) {
+                    if (customView.getParent() != null) {
+                        ((ViewGroup) customView.getParent()).removeView(customView);
+                    }
+                    LinearLayout.LayoutParams customParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    customParams.topMargin = dpToPx(context, 16);
+
+                    if (wrapInScrollView) {
+                        ScrollView scrollView = new ScrollView(context);
+                        scrollView.addView(customView);
+                        rootLayout.addView(scrollView, customParams);
+                    } else {
+                        rootLayout.addView(customView, customParams);
+                    }
                 }
+            } finally {
+                DialogTrace.end(trace);
+            }
 
-                if (positiveText != null) {
-                    TextView posBtn = createButton(context, positiveText, finalPrimaryColor, Color.WHITE, finalPrimaryColor);
-                    LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                            isSingleButton ? ViewGroup.LayoutParams.MATCH_PARENT : 0, 
-                            dpToPx(context, 48), 
-                            isSingleButton ? 0f : 1f);
-                    if (!isSingleButton) params.leftMargin = dpToPx(context, 8);
-                    posBtn.setOnClickListener(v -> {
-                        if (positiveListener != null) positiveListener.onClick(v);
-                        dialog.dismiss();
-                    });
-                    btnLayout.addView(posBtn, params);
+            DialogTrace.begin(trace, "SketchDialog.buildButtons");
+            try {
+                if (positiveText != null || negativeText != null) {
+                    LinearLayout btnLayout = new LinearLayout(context);
+                    btnLayout.setOrientation(LinearLayout.HORIZONTAL);
+                    LinearLayout.LayoutParams btnLayoutParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    btnLayoutParams.topMargin = dpToPx(context, 24);
+                    rootLayout.addView(btnLayout, btnLayoutParams);
+
+                    boolean isSingleButton = (positiveText == null || negativeText == null);
+
+                    if (negativeText != null) {
+                        TextView negBtn = createButton(context, negativeText, btnNegBg, btnNegText, finalPrimaryColor);
+                        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                                isSingleButton ? ViewGroup.LayoutParams.MATCH_PARENT : 0, 
+                                dpToPx(context, 48), 
+                                isSingleButton ? 0f : 1f);
+                        if (!isSingleButton) params.rightMargin = dpToPx(context, 8);
+                        negBtn.setOnClickListener(v -> {
+                            if (negativeListener != null) negativeListener.onClick(v);
+                            dialog.dismiss();
+                        });
+                        btnLayout.addView(negBtn, params);
+                    }
+
+                    if (positiveText != null) {
+                        TextView posBtn = createButton(context, positiveText, finalPrimaryColor, Color.WHITE, finalPrimaryColor);
+                        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                                isSingleButton ? ViewGroup.LayoutParams.MATCH_PARENT : 0, 
+                                dpToPx(context, 48), 
+                                isSingleButton ? 0f : 1f);
+                        if (!isSingleButton) params.leftMargin = dpToPx(context, 8);
+                        posBtn.setOnClickListener(v -> dialog.performPositive(() -> {
+                            if (positiveListener != null) positiveListener.onClick(v);
+                            dialog.dismiss();
+                        }));
+                        btnLayout.addView(posBtn, params);
+                        dialog.mPositiveButton = posBtn;
+                    }
                 }
+            } finally {
+                DialogTrace.end(trace);
             }
 
-            dialog.setContentView(rootLayout);
+            if (hasInput && inputValidator != null) dialog.scheduleValidation(0);
 
-            if (dialog.getWindow() != null) {
-                int width = (int) (context.getResources().getDisplayMetrics().widthPixels * 0.85);
-                dialog.getWindow().setLayout(width, ViewGroup.LayoutParams.WRAP_CONTENT);
+            int width = (int) (context.getResources().getDisplayMetrics().widthPixels * 0.85);
+            if (useOverlay) {
+                dialog.mOverlayContent = rootLayout;
+                dialog.mOverlayWidth = width;
+            } else {
+                DialogTrace.begin(trace, "SketchDialog.setContentView");
+                try {
+                    dialog.setContentView(rootLayout);
+                } finally {
+                    DialogTrace.end(trace);
+                }
+                DialogTrace.begin(trace, "SketchDialog.sizeWindow");
+                try {
+                    if (dialog.getWindow() != null) {
+                        dialog.getWindow().setLayout(width, ViewGroup.LayoutParams.WRAP_CONTENT);
+                    }
+                } finally {
+                    DialogTrace.end(trace);
+                }
             }
 
-            dialog.setOnShowListener(d -> {
+            Runnable entryAnimation = () -> {
                 if (animation == Animation.NONE) return;
 
-                rootLayout.setAlpha(0f);
-                if (animation == Animation.ZOOM) {
-                    rootLayout.setScaleX(0.7f);
-                    rootLayout.setScaleY(0.7f);
-                    rootLayout.animate().alpha(1f).scaleX(1f).scaleY(1f)
-                            .setDuration(300).setInterpolator(new OvershootInterpolator()).start();
-                } else if (animation == Animation.FADE) {
-                    rootLayout.animate().alpha(1f).setDuration(250).start();
-                } else if (animation == Animation.SLIDE_BOTTOM) {
-                    rootLayout.setTranslationY(150f);
-                    rootLayout.animate().alpha(1f).translationY(0f)
-                            .setDuration(300).setInterpolator(new DecelerateInterpolator()).start();
+                boolean traceAnimation = DialogTrace.isActive(tracing);
+                DialogTrace.begin(traceAnimation, "SketchDialog.startEntryAnimation");
+                try {
+                    rootLayout.setAlpha(0f);
+                    if (animation == Animation.ZOOM) {
+                        rootLayout.setScaleX(0.7f);
+                        rootLayout.setScaleY(0.7f);
+                        rootLayout.animate().alpha(1f).scaleX(1f).scaleY(1f)
+                                .setDuration(300).setInterpolator(new OvershootInterpolator()).start();
+                    } else if (animation == Animation.FADE) {
+                        rootLayout.animate().alpha(1f).setDuration(250).start();
+                    } else if (animation == Animation.SLIDE_BOTTOM) {
+                        rootLayout.setTranslationY(150f);
+                        rootLayout.animate().alpha(1f).translationY(0f)
+                                .setDuration(300).setInterpolator(new DecelerateInterpolator()).start();
+                    }
+                } finally {
+                    DialogTrace.end(traceAnimation);
                 }
-            });
+            };
+            if (useOverlay) {
+                dialog.mEntryAnimation = entryAnimation;
+            } else {
+                dialog.setOnShowListener(d -> entryAnimation.run());
+            }
 
             return dialog;
         }
@@ -378,6 +1070,42 @@ public class SketchDialog extends Dialog {
             return dialog;
         }
 
+        private ResolvedStyle resolveStyle() {
+            boolean isDark = false;
+            if (theme == Theme.DARK) {
+                isDark = true;
+            } else if (theme == Theme.AUTO) {
+                isDark = (context.getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+            }
+
+            int finalPrimaryColor;
+            if (primaryColor != null) {
+                finalPrimaryColor = primaryColor;
+            } else if (defaults.primaryColor != null) {
+                finalPrimaryColor = defaults.primaryColor;
+            } else {
+                finalPrimaryColor = Color.parseColor("#582C8E");
+            }
+
+            int finalBgColor;
+            if (backgroundColor != null) {
+                finalBgColor = backgroundColor;
+            } else if (defaults.backgroundColor != null) {
+                finalBgColor = defaults.backgroundColor;
+            } else {
+                finalBgColor = isDark ? Color.parseColor("#1C1C22") : Color.parseColor("#FFFFFF");
+            }
+
+            return new ResolvedStyle.Builder(isDark)
+                    .setPrimaryColor(finalPrimaryColor)
+                    .setBackgroundColor(finalBgColor)
+                    .setTitleColor(isDark ? Color.parseColor("#FFFFFF") : Color.parseColor("#1A1A1A"))
+                    .setMessageColor(isDark ? Color.parseColor("#A0A0A5") : Color.parseColor("#666666"))
+                    .setNegativeButtonColor(isDark ? Color.parseColor("#2C2C35") : Color.parseColor("#F0F0F0"))
+                    .setNegativeTextColor(isDark ? Color.parseColor("#FFFFFF") : Color.parseColor("#333333"))
+                    .build();
+        }
+
         private TextView createButton(Context context, String text, int bgColor, int textColor, int primaryColor) {
             TextView button = new TextView(context);
             button.setText(text);
@@ -386,19 +1114,7 @@ public class SketchDialog extends Dialog {
             button.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
             button.setGravity(Gravity.CENTER);
 
-            GradientDrawable normal = new GradientDrawable();
-            normal.setColor(bgColor);
-            normal.setCornerRadius(dpToPx(context, 12));
-
-            GradientDrawable pressed = new GradientDrawable();
-            pressed.setColor(manipulateColor(bgColor, 0.8f));
-            pressed.setCornerRadius(dpToPx(context, 12));
-
-            StateListDrawable states = new StateListDrawable();
-            states.addState(new int[]{android.R.attr.state_pressed}, pressed);
-            states.addState(new int[]{}, normal);
-
-            button.setBackground(states);
+            button.setBackground(DrawableCache.pressable(context, bgColor, manipulateColor(bgColor, 0.8f), dpToPx(context, 12)));
             button.setClickable(true);
             button.setFocusable(true);
             return button;
@@ -452,4 +1168,759 @@ public class SketchDialog extends Dialog {
             canvas.drawArc(rect, -90, (360f * progress) / 100f, false, progressPaint);
         }
     }
+
+    /**
+     * Declarative description of a dialog's static content and style. Specs are authored in code
+     * or tooling, compiled into a binary catalog with {@link DialogCatalog#write}, and turned back
+     * into a {@link Builder} at runtime. Click listeners are attached to the returned builder.
+     */
+    public static final class DialogSpec {
+        private String title;
+        private String message;
+        private String messageHtml;
+        private String messageMarkdown;
+        private String icon;
+        private String positiveText;
+        private String negativeText;
+        private Theme theme;
+        private Animation animation;
+        private ProgressStyle progressStyle;
+        private Boolean glassyMode;
+        private Boolean cancelable;
+        private Integer primaryColor;
+        private Integer backgroundColor;
+        private Integer iconTintColor;
+        private volatile int iconResId;
+
+        public DialogSpec setTitle(String title) { this.title = title; return this; }
+        public DialogSpec setMessage(String message) { this.message = message; return this; }
+        public DialogSpec setMessageHtml(String html) { this.messageHtml = html; return this; }
+        public DialogSpec setMessageMarkdown(String markdown) { this.messageMarkdown = markdown; return this; }
+        /** Drawable resource name, e.g. {@code "ic_update"} or {@code "android:drawable/ic_dialog_alert"}. */
+        public DialogSpec setIcon(String resourceName) { this.icon = resourceName; this.iconResId = 0; return this; }
+        public DialogSpec setPositiveText(String text) { this.positiveText = text; return this; }
+        public DialogSpec setNegativeText(String text) { this.negativeText = text; return this; }
+        public DialogSpec setTheme(Theme theme) { this.theme = theme; return this; }
+        public DialogSpec setAnimation(Animation animation) { this.animation = animation; return this; }
+        public DialogSpec setProgressStyle(ProgressStyle style) { this.progressStyle = style; return this; }
+        public DialogSpec setGlassyMode(boolean enable) { this.glassyMode = enable; return this; }
+        public DialogSpec setCancelable(boolean cancelable) { this.cancelable = cancelable; return this; }
+        public DialogSpec setPrimaryColor(int color) { this.primaryColor = color; return this; }
+        public DialogSpec setBackgroundColor(int color) { this.backgroundColor = color; return this; }
+        public DialogSpec setIconTint(int color) { this.iconTintColor = color; return this; }
+
+        public Builder newBuilder(Context context) {
+            Builder builder = new Builder(context);
+            if (title != null) builder.setTitle(title);
+            if (message != null) builder.setMessage(message);
+            if (messageHtml != null) builder.setMessageHtml(messageHtml);
+            if (messageMarkdown != null) builder.setMessageMarkdown(messageMarkdown);
+            if (positiveText != null) builder.setPositiveButton(positiveText, null);
+            if (negativeText != null) builder.setNegativeButton(negativeText, null);
+            if (theme != null) builder.setTheme(theme);
+            if (animation != null) builder.setAnimation(animation);
+            if (progressStyle != null) builder.progressStyle = progressStyle;
+            if (glassyMode != null) builder.setGlassyMode(glassyMode);
+            if (cancelable != null) builder.setCancelable(cancelable);
+            if (primaryColor != null) builder.setPrimaryColor(primaryColor);
+            if (backgroundColor != null) builder.setBackgroundColor(backgroundColor);
+            if (iconTintColor != null) builder.setIconTint(iconTintColor);
+            if (icon != null) {
+                // Resolved once per spec; the catalog caches the spec, so later builds skip the lookup.
+                int resId = iconResId;
+                if (resId == 0) {
+                    resId = context.getResources().getIdentifier(icon, "drawable", context.getPackageName());
+                    iconResId = resId != 0 ? resId : -1;
+                }
+                if (resId > 0) builder.setIcon(resId);
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Read-only catalog of {@link DialogSpec}s compiled into a compact binary file. The file is
+     * memory-mapped from assets (store it uncompressed, e.g. {@code noCompress 'dlgcat'}) and
+     * each spec is decoded on first use, then cached.
+     *
+     * <p>Layout (big-endian): magic, version, count; {@code count} index entries of
+     * (id hash, id offset, spec offset) sorted by hash; then length-prefixed UTF-8 ids and
+     * tagged spec records terminated by {@code TAG_END}.
+     */
+    public static final class DialogCatalog {
+        private static final int MAGIC = 0x53444C47;
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 12;
+        private static final int ENTRY_SIZE = 12;
+
+        private static final byte TAG_END = 0;
+        private static final byte TAG_TITLE = 1;
+        private static final byte TAG_MESSAGE = 2;
+        private static final byte TAG_MESSAGE_HTML = 3;
+        private static final byte TAG_MESSAGE_MARKDOWN = 4;
+        private static final byte TAG_ICON = 5;
+        private static final byte TAG_POSITIVE = 6;
+        private static final byte TAG_NEGATIVE = 7;
+        private static final byte TAG_THEME = 8;
+        private static final byte TAG_ANIMATION = 9;
+        private static final byte TAG_PROGRESS = 10;
+        private static final byte TAG_GLASSY = 11;
+        private static final byte TAG_CANCELABLE = 12;
+        private static final byte TAG_PRIMARY_COLOR = 13;
+        private static final byte TAG_BACKGROUND_COLOR = 14;
+        private static final byte TAG_ICON_TINT = 15;
+
+        // Wire codes for enum values. Only append to these: reordering would change existing catalogs.
+        private static final Theme[] THEME_CODES = { Theme.LIGHT, Theme.DARK, Theme.AUTO };
+        private static final Animation[] ANIMATION_CODES = { Animation.NONE, Animation.ZOOM, Animation.FADE, Animation.SLIDE_BOTTOM };
+        private static final ProgressStyle[] PROGRESS_CODES = { ProgressStyle.NONE, ProgressStyle.SPINNER, ProgressStyle.HORIZONTAL, ProgressStyle.CIRCULAR };
+
+        private final ByteBuffer buffer;
+        private final int count;
+        private final AtomicReferenceArray<DialogSpec> decoded;
+
+        private DialogCatalog(ByteBuffer buffer) throws IOException {
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a dialog catalog");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported dialog catalog version " + buffer.getInt(4));
+            }
+            int count = buffer.getInt(8);
+            long dataStart = HEADER_SIZE + (long) count * ENTRY_SIZE;
+            if (count < 0 || dataStart > buffer.capacity()) {
+                throw new IOException("Corrupt dialog catalog: bad entry count " + count);
+            }
+            // Check every offset up front so lookups never index outside the file.
+            for (int i = 0; i < count; i++) {
+                int idOffset = buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 4);
+                int specOffset = buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8);
+                if (idOffset < dataStart || idOffset >= buffer.capacity() || specOffset < dataStart || specOffset >= buffer.capacity()) {
+                    throw new IOException("Corrupt dialog catalog: bad offsets in entry " + i);
+                }
+            }
+            this.buffer = buffer;
+            this.count = count;
+            this.decoded = new AtomicReferenceArray<>(count);
+        }
+
+        public static DialogCatalog open(Context context, String assetName) throws IOException {
+            AssetManager assets = context.getAssets();
+            ByteBuffer buffer;
+            try (AssetFileDescriptor afd = assets.openFd(assetName);
+            FileInputStream in = afd.createInputStream()) {
+                buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            } catch (FileNotFoundException e) {
+                // Compressed assets have no file descriptor to map; read them into memory instead.
+                try (InputStream in = assets.open(assetName)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] chunk = new byte[8192];
+                    int read;
+                    while ((read = in.read(chunk)) != -1) out.write(chunk, 0, read);
+                    buffer = ByteBuffer.wrap(out.toByteArray());
+                }
+            }
+            return new DialogCatalog(buffer);
+        }
+
+        /** @throws IOException if the catalog's ids are corrupt */
+        public boolean contains(String id) throws IOException {
+            return indexOf(id) >= 0;
+        }
+
+        /**
+         * Returns a builder pre-populated from the spec, or {@code null} if the ID is unknown.
+         *
+         * @throws IOException if the spec's record is corrupt
+         */
+        public Builder newBuilder(Context context, String id) throws IOException {
+            int index = indexOf(id);
+            if (index < 0) return null;
+            DialogSpec spec = decoded.get(index);
+            if (spec == null) {
+                spec = decode(buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 8));
+                if (!decoded.compareAndSet(index, null, spec)) spec = decoded.get(index);
+            }
+            return spec.newBuilder(context);
+        }
+
+        private int indexOf(String id) throws IOException {
+            int hash = id.hashCode();
+            int low = 0, high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midHash = buffer.getInt(HEADER_SIZE + mid * ENTRY_SIZE);
+                if (midHash < hash) {
+                    low = mid + 1;
+                } else if (midHash > hash) {
+                    high = mid - 1;
+                } else {
+                    int first = mid;
+                    while (first > 0 && buffer.getInt(HEADER_SIZE + (first - 1) * ENTRY_SIZE) == hash) first--;
+                    for (int i = first; i < count && buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE) == hash; i++) {
+                        ByteBuffer view = buffer.duplicate();
+                        view.position(buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 4));
+                        if (id.equals(readString(view))) return i;
+                    }
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private DialogSpec decode(int offset) throws IOException {
+            try {
+                return decodeRecord(offset);
+            } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+                throw new IOException("Corrupt dialog catalog record at " + offset, e);
+            }
+        }
+
+        private DialogSpec decodeRecord(int offset) throws IOException {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            DialogSpec spec = new DialogSpec();
+            byte tag;
+            while ((tag = view.get()) != TAG_END) {
+                switch (tag) {
+                    case TAG_TITLE: spec.title = readString(view); break;
+                    case TAG_MESSAGE: spec.message = readString(view); break;
+                    case TAG_MESSAGE_HTML: spec.messageHtml = readString(view); break;
+                    case TAG_MESSAGE_MARKDOWN: spec.messageMarkdown = readString(view); break;
+                    case TAG_ICON: spec.icon = readString(view); break;
+                    case TAG_POSITIVE: spec.positiveText = readString(view); break;
+                    case TAG_NEGATIVE: spec.negativeText = readString(view); break;
+                    case TAG_THEME: spec.theme = fromCode(THEME_CODES, view.get()); break;
+                    case TAG_ANIMATION: spec.animation = fromCode(ANIMATION_CODES, view.get()); break;
+                    case TAG_PROGRESS: spec.progressStyle = fromCode(PROGRESS_CODES, view.get()); break;
+                    case TAG_GLASSY: spec.glassyMode = view.get() != 0; break;
+                    case TAG_CANCELABLE: spec.cancelable = view.get() != 0; break;
+                    case TAG_PRIMARY_COLOR: spec.primaryColor = view.getInt(); break;
+                    case TAG_BACKGROUND_COLOR: spec.backgroundColor = view.getInt(); break;
+                    case TAG_ICON_TINT: spec.iconTintColor = view.getInt(); break;
+                    default: throw new IOException("Unknown dialog catalog tag " + tag);
+                }
+            }
+            return spec;
+        }
+
+        private static <T> T fromCode(T[] codes, byte code) throws IOException {
+            if (code < 0 || code >= codes.length) throw new IOException("Unknown dialog catalog value " + code);
+            return codes[code];
+        }
+
+        private static <T> int toCode(T[] codes, T value) {
+            for (int i = 0; i < codes.length; i++) {
+                if (codes[i] == value) return i;
+            }
+            throw new IllegalArgumentException("No catalog code for " + value);
+        }
+
+        private static String readString(ByteBuffer view) throws IOException {
+            int length = view.remaining() >= 4 ? view.getInt() : -1;
+            if (length < 0 || length > view.remaining()) {
+                throw new IOException("Corrupt dialog catalog: bad string at " + view.position());
+            }
+            byte[] bytes = new byte[length];
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Compiles {@code specs} (keyed by ID) into the binary catalog format. */
+        public static void write(Map<String, DialogSpec> specs, OutputStream out) throws IOException {
+            List<String> ids = new ArrayList<>(specs.keySet());
+            Collections.sort(ids, (a, b) -> {
+                int byHash = Integer.compare(a.hashCode(), b.hashCode());
+                return byHash != 0 ? byHash : a.compareTo(b);
+            });
+
+            int bodyStart = HEADER_SIZE + ids.size() * ENTRY_SIZE;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            int[] idOffsets = new int[ids.size()];
+            int[] specOffsets = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                idOffsets[i] = bodyStart + bodyOut.size();
+                writeString(bodyOut, ids.get(i));
+                specOffsets[i] = bodyStart + bodyOut.size();
+                writeSpec(bodyOut, specs.get(ids.get(i)));
+            }
+            bodyOut.flush();
+
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                header.writeInt(ids.get(i).hashCode());
+                header.writeInt(idOffsets[i]);
+                header.writeInt(specOffsets[i]);
+            }
+            body.writeTo(header);
+            header.flush();
+        }
+
+        private static void writeSpec(DataOutputStream out, DialogSpec spec) throws IOException {
+            writeStringTag(out, TAG_TITLE, spec.title);
+            writeStringTag(out, TAG_MESSAGE, spec.message);
+            writeStringTag(out, TAG_MESSAGE_HTML, spec.messageHtml);
+            writeStringTag(out, TAG_MESSAGE_MARKDOWN, spec.messageMarkdown);
+            writeStringTag(out, TAG_ICON, spec.icon);
+            writeStringTag(out, TAG_POSITIVE, spec.positiveText);
+            writeStringTag(out, TAG_NEGATIVE, spec.negativeText);
+            if (spec.theme != null) { out.writeByte(TAG_THEME); out.writeByte(toCode(THEME_CODES, spec.theme)); }
+            if (spec.animation != null) { out.writeByte(TAG_ANIMATION); out.writeByte(toCode(ANIMATION_CODES, spec.animation)); }
+            if (spec.progressStyle != null) { out.writeByte(TAG_PROGRESS); out.writeByte(toCode(PROGRESS_CODES, spec.progressStyle)); }
+            if (spec.glassyMode != null) { out.writeByte(TAG_GLASSY); out.writeByte(spec.glassyMode ? 1 : 0); }
+            if (spec.cancelable != null) { out.writeByte(TAG_CANCELABLE); out.writeByte(spec.cancelable ? 1 : 0); }
+            if (spec.primaryColor != null) { out.writeByte(TAG_PRIMARY_COLOR); out.writeInt(spec.primaryColor); }
+            if (spec.backgroundColor != null) { out.writeByte(TAG_BACKGROUND_COLOR); out.writeInt(spec.backgroundColor); }
+            if (spec.iconTintColor != null) { out.writeByte(TAG_ICON_TINT); out.writeInt(spec.iconTintColor); }
+            out.writeByte(TAG_END);
+        }
+
+        private static void writeStringTag(DataOutputStream out, byte tag, String value) throws IOException {
+            if (value == null) return;
+            out.writeByte(tag);
+            writeString(out, value);
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Thin guard around {@link Trace}. Sections are only emitted when tracing was requested and a
+     * trace is being captured, so the cost with tracing off is a boolean check.
+     */
+    private static final class DialogTrace {
+        private static final AtomicInteger VISIBLE_DIALOGS = new AtomicInteger();
+
+        static boolean isActive(boolean requested) {
+            if (!requested) return false;
+            return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || Trace.isEnabled();
+        }
+
+        static void begin(boolean active, String section) {
+            if (active) Trace.beginSection(section);
+        }
+
+        static void end(boolean active) {
+            if (active) Trace.endSection();
+        }
+
+        static void counter(boolean active, String name, long value) {
+            if (active && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.setCounter(name, value);
+        }
+
+        static void onVisibilityChanged(boolean tracing, boolean visible) {
+            int count = visible ? VISIBLE_DIALOGS.incrementAndGet() : VISIBLE_DIALOGS.decrementAndGet();
+            counter(isActive(tracing), "SketchDialog#visible", count);
+        }
+    }
+
+    /**
+     * Shares drawable state between dialogs. Each entry keeps a {@link Drawable.ConstantState} and
+     * callers get a {@code newDrawable()} copy, so identical buttons and cards reuse one state
+     * instead of allocating fresh drawables on every build(). Returned drawables must not be mutated.
+     */
+    private static final class DrawableCache {
+        private static final int KIND_SOLID = 0;
+        private static final int KIND_ROUNDED = 1;
+        private static final int KIND_PRESSABLE = 2;
+
+        private static final int MAX_SIZE = 64;
+
+        /** Replaced rather than emptied on {@link #clear()}, so the stats restart from zero as well. */
+        private static volatile LruCache<Key, Drawable.ConstantState> cache = new LruCache<>(MAX_SIZE);
+
+        static Drawable solid(int color) {
+            Key key = new Key(KIND_SOLID, color, 0, 0, 0, 0, 0);
+            LruCache<Key, Drawable.ConstantState> current = cache;
+            Drawable.ConstantState state = current.get(key);
+            if (state == null) {
+                state = new ColorDrawable(color).getConstantState();
+                current.put(key, state);
+            }
+            return state.newDrawable();
+        }
+
+        static Drawable rounded(Context context, int color, float radius, int strokeWidth, int strokeColor) {
+            Key key = new Key(KIND_ROUNDED, color, 0, radius, strokeWidth, strokeColor, density(context));
+            LruCache<Key, Drawable.ConstantState> current = cache;
+            Drawable.ConstantState state = current.get(key);
+            if (state == null) {
+                state = createRounded(color, radius, strokeWidth, strokeColor).getConstantState();
+                current.put(key, state);
+            }
+            return state.newDrawable(context.getResources());
+        }
+
+        static Drawable pressable(Context context, int color, int pressedColor, float radius) {
+            Key key = new Key(KIND_PRESSABLE, color, pressedColor, radius, 0, 0, density(context));
+            LruCache<Key, Drawable.ConstantState> current = cache;
+            Drawable.ConstantState state = current.get(key);
+            if (state == null) {
+                StateListDrawable states = new StateListDrawable();
+                states.addState(new int[]{android.R.attr.state_pressed}, createRounded(pressedColor, radius, 0, 0));
+                states.addState(new int[]{}, createRounded(color, radius, 0, 0));
+                state = states.getConstantState();
+                current.put(key, state);
+            }
+            return state.newDrawable(context.getResources());
+        }
+
+        static DrawableCacheStats stats() {
+            LruCache<Key, Drawable.ConstantState> current = cache;
+            return new DrawableCacheStats(current.hitCount(), current.missCount(), current.evictionCount(), current.size(), current.maxSize());
+        }
+
+        static void clear() {
+            cache = new LruCache<>(MAX_SIZE);
+        }
+
+        private static GradientDrawable createRounded(int color, float radius, int strokeWidth, int strokeColor) {
+            GradientDrawable drawable = new GradientDrawable();
+            drawable.setColor(color);
+            if (strokeWidth > 0) drawable.setStroke(strokeWidth, strokeColor);
+            drawable.setCornerRadius(radius);
+            return drawable;
+        }
+
+        private static float density(Context context) {
+            return context.getResources().getDisplayMetrics().density;
+        }
+
+        private static final class Key {
+            final int kind, color, pressedColor, strokeWidth, strokeColor;
+            final float radius, density;
+
+            Key(int kind, int color, int pressedColor, float radius, int strokeWidth, int strokeColor, float density) {
+                this.kind = kind;
+                this.color = color;
+                this.pressedColor = pressedColor;
+                this.radius = radius;
+                this.strokeWidth = strokeWidth;
+                this.strokeColor = strokeColor;
+                this.density = density;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof Key)) return false;
+                Key other = (Key) o;
+                return kind == other.kind && color == other.color && pressedColor == other.pressedColor
+                && strokeWidth == other.strokeWidth && strokeColor == other.strokeColor
+                && Float.compare(radius, other.radius) == 0 && Float.compare(density, other.density) == 0;
+            }
+
+            @Override
+            public int hashCode() {
+                int result = kind;
+                result = 31 * result + color;
+                result = 31 * result + pressedColor;
+                result = 31 * result + strokeWidth;
+                result = 31 * result + strokeColor;
+                result = 31 * result + Float.floatToIntBits(radius);
+                result = 31 * result + Float.floatToIntBits(density);
+                return result;
+            }
+        }
+    }
+
+    private interface DefaultsUpdate {
+        DialogDefaults apply(DialogDefaults current);
+    }
+
+    private static final class ScopedDefaults {
+        final WeakReference<Context> scope;
+        final DialogDefaults defaults;
+
+        ScopedDefaults(Context scope, DialogDefaults defaults) {
+            this.scope = new WeakReference<>(scope);
+            this.defaults = defaults;
+        }
+    }
+
+    /** Global defaults plus per-scope overrides, published as one unit through {@link #defaultsState}. */
+    private static final class DefaultsState {
+        final DialogDefaults global;
+        final ScopedDefaults[] scoped;
+
+        DefaultsState(DialogDefaults global, ScopedDefaults[] scoped) {
+            this.global = global;
+            this.scoped = scoped;
+        }
+
+        DefaultsState withGlobal(DialogDefaults defaults) {
+            return new DefaultsState(defaults, scoped);
+        }
+
+        DefaultsState withScope(Context scope, DialogDefaults defaults) {
+            List<ScopedDefaults> next = new ArrayList<>(scoped.length + 1);
+            for (ScopedDefaults entry : scoped) {
+                Context existing = entry.scope.get();
+                if (existing != null && existing != scope) next.add(entry);
+            }
+            if (defaults != null) next.add(new ScopedDefaults(scope, defaults));
+            return new DefaultsState(global, next.toArray(new ScopedDefaults[0]));
+        }
+
+        DialogDefaults resolve(Context context) {
+            if (scoped.length == 0) return global;
+            while (context != null) {
+                for (ScopedDefaults entry : scoped) {
+                    if (entry.scope.get() == context) return entry.defaults;
+                }
+                if (!(context instanceof ContextWrapper)) break;
+                context = ((ContextWrapper) context).getBaseContext();
+            }
+            return global;
+        }
+    }
+
+    /**
+     * Parses HTML / Markdown messages into spans on a background thread and keeps the
+     * results in a bounded LRU so reopening a dialog with the same text is instant.
+     */
+    private static final class RichMessage {
+        private static final int CACHE_SIZE_CHARS = 256 * 1024;
+
+        private static final LruCache<String, Spanned> CACHE = new LruCache<String, Spanned>(CACHE_SIZE_CHARS) {
+            @Override
+            protected int sizeOf(String key, Spanned value) {
+                return key.length() + value.length();
+            }
+        };
+        private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "SketchDialog-RichMessage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+        private static final Pattern CODE = Pattern.compile("`([^`]+)`");
+        private static final Pattern BOLD = Pattern.compile("(\\*\\*|__)(.+?)\\1");
+        private static final Pattern ITALIC = Pattern.compile("(?<![\\w*])([*_])(?!\\s)(.+?)\\1(?![\\w*])");
+        private static final Pattern LINK = Pattern.compile("\\[([^\\]]+)\\]\\(([^)\\s]+)\\)");
+        private static final char SLOT_START = '\uE000';
+        private static final char SLOT_END = '\uE001';
+
+        static void bind(TextView view, String source, boolean markdown) {
+            view.setMovementMethod(LinkMovementMethod.getInstance());
+            String key = (markdown ? "md:" : "html:") + source;
+            Spanned cached = CACHE.get(key);
+            if (cached != null) {
+                view.setText(cached);
+                return;
+            }
+            EXECUTOR.execute(() -> {
+                Spanned parsed = parse(markdown ? markdownToHtml(source) : source);
+                CACHE.put(key, parsed);
+                MAIN_HANDLER.post(() -> view.setText(parsed));
+            });
+        }
+
+        @SuppressWarnings("deprecation")
+        private static Spanned parse(String html) {
+            Spanned spanned;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                spanned = Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY);
+            } else {
+                spanned = Html.fromHtml(html);
+            }
+            SpannableStringBuilder builder = new SpannableStringBuilder(spanned);
+            int end = builder.length();
+            while (end > 0 && Character.isWhitespace(builder.charAt(end - 1))) end--;
+            builder.delete(end, builder.length());
+            return new SpannedString(builder);
+        }
+
+        private static String markdownToHtml(String markdown) {
+            StringBuilder html = new StringBuilder(markdown.length() + 64);
+            for (String line : markdown.split("\n", -1)) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    html.append("<br>");
+                    continue;
+                }
+                int level = 0;
+                while (level < trimmed.length() && trimmed.charAt(level) == '#') level++;
+                if (level > 0 && level <= 6 && level < trimmed.length() && trimmed.charAt(level) == ' ') {
+                    String heading = inline(trimmed.substring(level + 1).trim());
+                    if (level <= 2) {
+                        html.append("<big><b>").append(heading).append("</b></big><br>");
+                    } else {
+                        html.append("<b>").append(heading).append("</b><br>");
+                    }
+                } else if (trimmed.startsWith("- ") || trimmed.startsWith("* ") || trimmed.startsWith("+ ")) {
+                    html.append("&#8226; ").append(inline(trimmed.substring(2).trim())).append("<br>");
+                } else {
+                    html.append(inline(trimmed)).append("<br>");
+                }
+            }
+            return html.toString();
+        }
+
+        private static String inline(String text) {
+            // Code spans and link targets are parked in numbered slots so emphasis only sees plain text.
+            String html = TextUtils.htmlEncode(text.replace(SLOT_START, ' ').replace(SLOT_END, ' '));
+            List<String> slots = new ArrayList<>();
+            StringBuilder out = new StringBuilder(html.length() + 32);
+            Matcher code = CODE.matcher(html);
+            int last = 0;
+            while (code.find()) {
+                out.append(html, last, code.start());
+                slot(out, slots, "<tt>" + code.group(1) + "</tt>");
+                last = code.end();
+            }
+            html = out.append(html, last, html.length()).toString();
+
+            out.setLength(0);
+            Matcher link = LINK.matcher(html);
+            last = 0;
+            while (link.find()) {
+                out.append(html, last, link.start());
+                slot(out, slots, "<a href=\"" + link.group(2) + "\">");
+                out.append(link.group(1)).append("</a>");
+                last = link.end();
+            }
+            html = out.append(html, last, html.length()).toString();
+
+            html = BOLD.matcher(html).replaceAll("<b>$2</b>");
+            html = ITALIC.matcher(html).replaceAll("<i>$2</i>");
+            if (slots.isEmpty()) return html;
+
+            out.setLength(0);
+            for (int i = 0; i < html.length(); i++) {
+                char c = html.charAt(i);
+                if (c != SLOT_START) {
+                    out.append(c);
+                    continue;
+                }
+                int end = html.indexOf(SLOT_END, i);
+                out.append(slots.get(Integer.parseInt(html.substring(i + 1, end))));
+                i = end;
+            }
+            return out.toString();
+        }
+
+        private static void slot(StringBuilder out, List<String> slots, String html) {
+            out.append(SLOT_START).append(slots.size()).append(SLOT_END);
+            slots.add(html);
+        }
+    }
+
+    /**
+     * Decodes file / content URI icons off the main thread, downsampled to the icon size,
+     * and shares the decoded bitmaps across dialogs through a byte-bounded LRU.
+     */
+    private static final class IconLoader {
+        private static final int CACHE_SIZE_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 8 * 1024 * 1024);
+
+        private static final LruCache<String, Bitmap> CACHE = new LruCache<String, Bitmap>(CACHE_SIZE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "SketchDialog-IconLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+        static void load(ImageView view, Uri uri, int sizePx, Integer tintColor) {
+            String key = key(uri, sizePx);
+            Bitmap cached = CACHE.get(key);
+            if (cached != null) {
+                setBitmap(view, cached, tintColor);
+                return;
+            }
+            view.setTag(key);
+            ContentResolver resolver = view.getContext().getApplicationContext().getContentResolver();
+            EXECUTOR.execute(() -> {
+                Bitmap bitmap = decode(resolver, uri, sizePx);
+                if (bitmap == null) return;
+                CACHE.put(key, bitmap);
+                MAIN_HANDLER.post(() -> {
+                    if (key.equals(view.getTag())) setBitmap(view, bitmap, tintColor);
+                });
+            });
+        }
+
+        static void evict(Uri uri) {
+            String prefix = uri + "@";
+            for (String key : CACHE.snapshot().keySet()) {
+                if (key.startsWith(prefix)) CACHE.remove(key);
+            }
+        }
+
+        static void clear() {
+            CACHE.evictAll();
+        }
+
+        /**
+         * File URIs also carry the file's modification time and length, so replacing the file is
+         * picked up on the next load. Content URIs stay cached until {@link #evict} is called.
+         */
+        private static String key(Uri uri, int sizePx) {
+            String key = uri + "@" + sizePx;
+            if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+                File file = new File(uri.getPath());
+                key += "#" + file.lastModified() + ":" + file.length();
+            }
+            return key;
+        }
+
+        private static void setBitmap(ImageView view, Bitmap bitmap, Integer tintColor) {
+            view.setImageBitmap(bitmap);
+            if (tintColor != null) {
+                view.setColorFilter(tintColor, PorterDuff.Mode.SRC_IN);
+            } else {
+                view.clearColorFilter();
+            }
+        }
+
+        private static Bitmap decode(ContentResolver resolver, Uri uri, int sizePx) {
+            try {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                try (InputStream in = resolver.openInputStream(uri)) {
+                    if (in == null) return null;
+                    BitmapFactory.decodeStream(in, null, options);
+                }
+                if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+                int sampleSize = 1;
+                while (options.outWidth / (sampleSize * 2) >= sizePx && options.outHeight / (sampleSize * 2) >= sizePx) {
+                    sampleSize *= 2;
+                }
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSize;
+                Bitmap sampled;
+                try (InputStream in = resolver.openInputStream(uri)) {
+                    if (in == null) return null;
+                    sampled = BitmapFactory.decodeStream(in, null, options);
+                }
+                if (sampled == null) return null;
+
+                float scale = Math.min((float) sizePx / sampled.getWidth(), (float) sizePx / sampled.getHeight());
+                int width = Math.max(1, Math.round(sampled.getWidth() * scale));
+                int height = Math.max(1, Math.round(sampled.getHeight() * scale));
+                if (width == sampled.getWidth() && height == sampled.getHeight()) return sampled;
+                Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+                if (scaled != sampled) sampled.recycle();
+                return scaled;
+            } catch (IOException | SecurityException | OutOfMemoryError e) {
+                // The placeholder stays in place; a missing or unreadable icon is not an error.
+                return null;
+            }
+        }
+    }
 }